@@ -0,0 +1,294 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Q-Learning as a pipeline: actors play, one learner learns.
+ *
+ * Each actor thread plays episodes in its own {@link TTTEnvironment}, against
+ * its own opponent, with an {@link EpsilonGreedyPolicy} around the latest
+ * snapshot of the greedy policy. It never reads the q-values. When an episode
+ * is over, its transitions are pushed, as (state id, cell, reward, next state
+ * id) records, into a bounded lock-free {@link TransitionQueue}; an actor
+ * waits while the queue is full.
+ *
+ * The learner, the thread that calls {@link #train}, drains the queue in
+ * batches and applies the Q-Learning update, {@link QTable#learn}, to the
+ * {@link QTable}. It is the only thread that writes q-values, so there
+ * is no contention on the table. Every {@code publishInterval} updates it
+ * publishes a new snapshot of the greedy policy for the actors.
+ */
+public class ActorLearner {
+
+	/**
+	 * the q-values learned into
+	 */
+	final QTable qTable;
+
+	/**
+	 * makes the opponent of each actor
+	 */
+	final Supplier<Agent> opponents;
+
+	final double alpha;
+	final double discount;
+	final double epsilon;
+
+	/**
+	 * the number of actor threads
+	 */
+	final int actors;
+
+	/**
+	 * the number of transitions the queue holds, and the most the learner takes
+	 * at once
+	 */
+	int queueCapacity = 1 << 14;
+	int batchSize = 256;
+
+	/**
+	 * the number of updates between two snapshots of the greedy policy
+	 */
+	int publishInterval = 4096;
+
+	long seed = 0;
+
+	/**
+	 * the greedy policy the actors play, replaced by the learner
+	 */
+	private volatile Policy snapshot;
+
+	/**
+	 * set when training ends, normally or not: actors stop playing, and stop
+	 * waiting for room in the queue
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * the number of updates and of snapshots in the last {@link #train}
+	 */
+	long updates;
+	int snapshots;
+
+	/**
+	 *
+	 * @param qTable    the q-values to learn into
+	 * @param opponents makes the opponent of each actor
+	 * @param alpha     the learning rate
+	 * @param discount
+	 * @param epsilon   the probability of exploring
+	 * @param actors    the number of actor threads
+	 */
+	public ActorLearner(QTable qTable, Supplier<Agent> opponents, double alpha, double discount, double epsilon,
+			int actors) {
+		if (actors < 1)
+			throw new IllegalArgumentException("At least one actor is needed");
+		if (opponents == null)
+			throw new IllegalArgumentException("The actors need an opponent supplier");
+		this.qTable = qTable;
+		this.opponents = opponents;
+		this.alpha = alpha;
+		this.discount = discount;
+		this.epsilon = epsilon;
+		this.actors = actors;
+	}
+
+	/**
+	 *
+	 * @param capacity the number of transitions the queue holds
+	 * @param batch    the most transitions the learner takes from the queue at
+	 *                 once
+	 */
+	public void setQueue(int capacity, int batch) {
+		if (capacity < 1 || batch < 1)
+			throw new IllegalArgumentException("The queue capacity and batch size must be positive");
+		this.queueCapacity = capacity;
+		this.batchSize = batch;
+	}
+
+	/**
+	 *
+	 * @param updates the number of updates between two snapshots of the greedy
+	 *                policy
+	 */
+	public void setPublishInterval(int updates) {
+		if (updates < 1)
+			throw new IllegalArgumentException("The publish interval must be at least one update");
+		this.publishInterval = updates;
+	}
+
+	/**
+	 *
+	 * @param seed the seed of the exploration: actor {@code i} explores with
+	 *             {@code new Random(seed + i)}
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays {@code numEpisodes} episodes in total, split as evenly as possible
+	 * between the actors, and learns from all their transitions.
+	 *
+	 * @param numEpisodes
+	 * @return the q-values
+	 */
+	public QTable train(int numEpisodes) {
+		TransitionQueue queue = new TransitionQueue(queueCapacity);
+		AtomicInteger finished = new AtomicInteger();
+		snapshot = qTable.greedyPolicy();
+		stopped = false;
+		snapshots = 1;
+		updates = 0;
+
+		List<Actor> tasks = new ArrayList<Actor>(actors);
+		for (int i = 0; i < actors; i++)
+			tasks.add(new Actor(queue, finished, numEpisodes / actors + ((i < numEpisodes % actors) ? 1 : 0),
+					new Random(seed + i)));
+
+		ExecutorService pool = Executors.newFixedThreadPool(actors);
+		try {
+			List<Future<Void>> running = new ArrayList<Future<Void>>(actors);
+			for (Actor actor : tasks)
+				running.add(pool.submit(actor));
+
+			learn(queue, finished);
+
+			for (Future<Void> actor : running)
+				actor.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Training was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("An actor failed", e.getCause());
+		} finally {
+			// an actor waiting on a full queue checks both
+			stopped = true;
+			pool.shutdownNow();
+		}
+		return qTable;
+	}
+
+	/**
+	 * The learner: applies the transitions until every actor is done and the
+	 * queue is empty.
+	 */
+	private void learn(TransitionQueue queue, AtomicInteger finished) {
+		long[] transitions = new long[batchSize];
+		double[] rewards = new double[batchSize];
+		long nextSnapshot = publishInterval;
+		while (true) {
+			// read before draining: if every actor was done, all their transitions are
+			// in the queue
+			boolean done = finished.get() == actors;
+			int n = queue.drain(transitions, rewards, batchSize);
+			if (n == 0) {
+				if (done)
+					return;
+				Thread.yield();
+				continue;
+			}
+
+			for (int i = 0; i < n; i++)
+				qTable.learn(TransitionQueue.state(transitions[i]), TransitionQueue.cell(transitions[i]), rewards[i],
+						TransitionQueue.next(transitions[i]), alpha, discount);
+			updates += n;
+
+			if (updates >= nextSnapshot) {
+				snapshot = qTable.greedyPolicy();
+				snapshots++;
+				nextSnapshot = updates + publishInterval;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return the greedy policy of the q-values
+	 */
+	public Policy extractPolicy() {
+		return qTable.greedyPolicy();
+	}
+
+	/**
+	 *
+	 * @return the number of q-value updates in the last {@link #train}
+	 */
+	public long getUpdates() {
+		return updates;
+	}
+
+	/**
+	 *
+	 * @return the number of greedy policies published to the actors in the last
+	 *         {@link #train}
+	 */
+	public int getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * An actor thread: plays its episodes and queues their transitions.
+	 */
+	private class Actor implements Callable<Void> {
+
+		final TransitionQueue queue;
+		final AtomicInteger finished;
+		final int episodes;
+		final Random random;
+
+		final TTTEnvironment env = new TTTEnvironment(opponents.get());
+
+		/**
+		 * the transitions of the current episode: X plays at most 5 moves
+		 */
+		final long[] transitions = new long[5];
+		final double[] rewards = new double[5];
+
+		Actor(TransitionQueue queue, AtomicInteger finished, int episodes, Random random) {
+			this.queue = queue;
+			this.finished = finished;
+			this.episodes = episodes;
+			this.random = random;
+		}
+
+		@Override
+		public Void call() throws IllegalMoveException {
+			try {
+				for (int e = 0; e < episodes && !stopped; e++) {
+					EpsilonGreedyPolicy behaviour = new EpsilonGreedyPolicy(snapshot, epsilon, random);
+					int steps = 0;
+					while (!env.isTerminal()) {
+						Outcome result = env.executeMove(behaviour.getMove(env.getCurrentGameState()));
+						transitions[steps] = TransitionQueue.pack(qTable.indexOf(result.s),
+								QTable.actionOf(result.s, result.move), qTable.indexOf(result.sPrime));
+						rewards[steps] = result.localReward;
+						steps++;
+					}
+					env.reset();
+
+					for (int i = 0; i < steps; i++)
+						while (!queue.offer(transitions[i], rewards[i])) {
+							// the learner is behind, or gone
+							if (stopped || Thread.currentThread().isInterrupted())
+								return null;
+							Thread.yield();
+						}
+				}
+			} finally {
+				finished.incrementAndGet();
+			}
+			return null;
+		}
+	}
+
+}
@@ -20,17 +20,7 @@ public class AggressivePolicy extends Policy {
 		
 		for(Move m:moves)
 		{
-			
-			Game resulting=null;
-			try{
-				resulting=g.simulateMove(m);
-			}
-			catch(IllegalMoveException e)
-			{
-				System.out.println(e.getMessage());
-				e.printStackTrace();
-			}
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
+			if (g.isWinningMove(m.who, m.cell))
 				return m;
 		}
 		
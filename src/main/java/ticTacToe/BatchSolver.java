@@ -0,0 +1,131 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Solves the Tic-Tac-Toe MDP for many settings of the discount and rewards at
+ * once, e.g. for a grid search over the parameters of {@link TTTMDP} and the
+ * planning agents.
+ *
+ * The settings share one {@link CompiledMDP}: the transitions don't depend on
+ * the rewards, and the reward of a transition only depends on its
+ * {@link CompiledMDP#outcome}. The values are stored state-major, with the
+ * values of all the settings for one state next to each other, and the states
+ * are solved backwards in one pass as in {@link RetrogradeSolver}, each backup
+ * running over all the settings in its innermost loop.
+ */
+public class BatchSolver {
+
+	/**
+	 * the shared transitions
+	 */
+	final CompiledMDP model;
+
+	/**
+	 * Uses the transitions of the default {@link TTTMDP}, over X's canonical,
+	 * ply ordered states.
+	 */
+	public BatchSolver() {
+		this(new TTTMDP().compile());
+	}
+
+	/**
+	 *
+	 * @param model the transitions to share; its rewards are not used
+	 * @throws IllegalArgumentException if the model's states are not ordered by
+	 *                                  ply
+	 */
+	public BatchSolver(CompiledMDP model) {
+		if (!model.getStates().isOrderedByPly())
+			throw new IllegalArgumentException("The states must be ordered by ply");
+		this.model = model;
+	}
+
+	/**
+	 *
+	 * @return the state index the solutions are indexed by
+	 */
+	public StateIndex getStates() {
+		return model.getStates();
+	}
+
+	/**
+	 * Solves every setting exactly.
+	 *
+	 * @param configs
+	 * @return the optimal values and policy of each setting, in the same order.
+	 *         Each is the same as {@link RetrogradeSolver#solve} gives for a model
+	 *         compiled with that setting.
+	 */
+	public List<RetrogradeSolver.Solution> solve(List<MDPConfig> configs) {
+		int c = configs.size();
+		int n = model.numStates();
+
+		// kind-major reward table and the discounts, one column per setting
+		double[] rewards = new double[4 * c];
+		double[] discounts = new double[c];
+		for (int j = 0; j < c; j++) {
+			MDPConfig config = configs.get(j);
+			TTTMDP mdp = config.toMDP();
+			discounts[j] = config.discount;
+			for (int kind = 0; kind < 4; kind++)
+				rewards[kind * c + j] = mdp.rewardFor(kind);
+		}
+
+		// state-major: the value of state s under setting j is values[s * c + j]
+		double[] values = new double[n * c];
+		byte[] policy = new byte[n * c];
+
+		double[] q = new double[c];
+		double[] max = new double[c];
+		int[] actionStart = model.actionStart;
+		int[] transitionStart = model.transitionStart;
+		for (int s = n - 1; s >= 0; s--) {
+			int row = s * c;
+			if (actionStart[s] == actionStart[s + 1]) {
+				for (int j = 0; j < c; j++)
+					policy[row + j] = -1; // terminal: worth 0, no move
+				continue;
+			}
+
+			for (int j = 0; j < c; j++)
+				max[j] = -Integer.MAX_VALUE;
+			for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+				for (int j = 0; j < c; j++)
+					q[j] = 0;
+				for (int t = transitionStart[a]; t < transitionStart[a + 1]; t++) {
+					int next = model.next[t];
+					if (next <= s)
+						throw new IllegalStateException("Transition to a state that is not solved yet");
+					double prob = model.prob[t];
+					int r = model.outcome[t] * c;
+					int v = next * c;
+					for (int j = 0; j < c; j++)
+						q[j] += prob * (rewards[r + j] + discounts[j] * values[v + j]);
+				}
+				byte cell = model.actionCell[a];
+				for (int j = 0; j < c; j++)
+					if (q[j] > max[j]) {
+						max[j] = q[j];
+						policy[row + j] = cell;
+					}
+			}
+			System.arraycopy(max, 0, values, row, c);
+		}
+
+		// one column per setting
+		List<RetrogradeSolver.Solution> solutions = new ArrayList<RetrogradeSolver.Solution>(c);
+		for (int j = 0; j < c; j++) {
+			double[] v = new double[n];
+			byte[] p = new byte[n];
+			for (int s = 0; s < n; s++) {
+				v[s] = values[s * c + j];
+				p[s] = policy[s * c + j];
+			}
+			solutions.add(new RetrogradeSolver.Solution(v, p));
+		}
+		return solutions;
+	}
+
+}
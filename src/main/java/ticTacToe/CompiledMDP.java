@@ -0,0 +1,244 @@
+package ticTacToe;
+
+import java.util.List;
+
+/**
+ * The {@link TTTMDP} compiled once into flat arrays, in compressed sparse row
+ * form, so Bellman backups are plain array loops that allocate nothing.
+ *
+ * The states are those of a {@link StateIndex}. The actions of state {@code s}
+ * are numbered {@code actionStart[s]} to {@code actionStart[s+1]-1}; terminal
+ * states have none. Action {@code a} plays in cell {@code actionCell[a]} and
+ * its transitions are numbered {@code transitionStart[a]} to
+ * {@code transitionStart[a+1]-1}. Transition {@code t} leads to state
+ * {@code next[t]} with probability {@code prob[t]}, and gives reward
+ * {@code reward[t]}.
+ *
+ * With a canonical index, cells are those of the orbit representative, and
+ * opponent replies that lead to the same state are merged into one transition.
+ *
+ * Instances are immutable: the arrays must not be changed. Get one from
+ * {@link TTTMDP#compile()}.
+ */
+public class CompiledMDP {
+
+	/**
+	 * the states of the model
+	 */
+	final StateIndex states;
+
+	/**
+	 * state id -> first action id, with one extra entry at the end
+	 */
+	final int[] actionStart;
+
+	/**
+	 * action id -> cell played, 3*i+j
+	 */
+	final byte[] actionCell;
+
+	/**
+	 * action id -> first transition id, with one extra entry at the end
+	 */
+	final int[] transitionStart;
+
+	/**
+	 * transition id -> state id reached
+	 */
+	final int[] next;
+
+	/**
+	 * transition id -> probability
+	 */
+	final double[] prob;
+
+	/**
+	 * transition id -> reward received
+	 */
+	final double[] reward;
+
+	/**
+	 * transition id -> the {@link Game#getState()} of the state reached:
+	 * {@link Game#ONGOING}, {@link Game#X_WON}, {@link Game#O_WON} or
+	 * {@link Game#DRAW}. The reward only depends on this, so models of the same
+	 * states with different rewards share everything but {@link #reward}.
+	 */
+	final byte[] outcome;
+
+	/**
+	 * Compiles {@code mdp} over {@code states}, using
+	 * {@link TTTMDP#generateTransitions(Game, Move)} for every state and move.
+	 *
+	 * @param mdp
+	 * @param states the states to compile, all X's turn or terminal
+	 */
+	CompiledMDP(TTTMDP mdp, StateIndex states) {
+		this.states = states;
+		int n = states.size();
+
+		int numActions = 0;
+		for (int s = 0; s < n; s++) {
+			Game g = states.getGame(s);
+			if (!g.isTerminal())
+				numActions += Integer.bitCount(g.getEmptyCells());
+		}
+
+		this.actionStart = new int[n + 1];
+		this.actionCell = new byte[numActions];
+		this.transitionStart = new int[numActions + 1];
+
+		// at most 8 replies per move: sized for the worst case, then trimmed.
+		int[] nextBuf = new int[numActions * 8];
+		double[] probBuf = new double[numActions * 8];
+		double[] rewardBuf = new double[numActions * 8];
+
+		int a = 0;
+		int t = 0;
+		for (int s = 0; s < n; s++) {
+			actionStart[s] = a;
+			Game g = states.getGame(s);
+			if (g.isTerminal())
+				continue;
+
+			for (int empty = g.getEmptyCells(); empty != 0; empty &= empty - 1) {
+				int cell = Integer.numberOfTrailingZeros(empty);
+				actionCell[a] = (byte) cell;
+				transitionStart[a] = t;
+
+				List<TransitionProb> transitions = mdp.generateTransitions(g, Move.of(g.getTurn(), cell));
+				for (TransitionProb tp : transitions) {
+					int id = states.indexOf(tp.outcome.sPrime);
+					if (id < 0)
+						throw new IllegalStateException("Successor not in the state index:\n" + tp.outcome.sPrime);
+
+					// symmetric replies reach the same state with the same reward: merge them
+					int u = transitionStart[a];
+					while (u < t && nextBuf[u] != id)
+						u++;
+					if (u < t) {
+						probBuf[u] += tp.prob;
+					} else {
+						nextBuf[t] = id;
+						probBuf[t] = tp.prob;
+						rewardBuf[t] = tp.outcome.localReward;
+						t++;
+					}
+				}
+				a++;
+			}
+		}
+		actionStart[n] = a;
+		transitionStart[a] = t;
+
+		this.next = new int[t];
+		this.prob = new double[t];
+		this.reward = new double[t];
+		System.arraycopy(nextBuf, 0, next, 0, t);
+		System.arraycopy(probBuf, 0, prob, 0, t);
+		System.arraycopy(rewardBuf, 0, reward, 0, t);
+
+		this.outcome = new byte[t];
+		for (int u = 0; u < t; u++)
+			outcome[u] = (byte) states.getGame(next[u]).getState();
+	}
+
+	/**
+	 * A model with the same states and transitions as {@code base}, and the
+	 * rewards of {@code mdp}. Only the rewards are computed: the other arrays are
+	 * shared with {@code base}.
+	 */
+	private CompiledMDP(CompiledMDP base, TTTMDP mdp) {
+		this.states = base.states;
+		this.actionStart = base.actionStart;
+		this.actionCell = base.actionCell;
+		this.transitionStart = base.transitionStart;
+		this.next = base.next;
+		this.prob = base.prob;
+		this.outcome = base.outcome;
+		this.reward = new double[next.length];
+		for (int t = 0; t < next.length; t++)
+			reward[t] = mdp.rewardFor(outcome[t]);
+	}
+
+	/**
+	 * Recompiles the model for different rewards without generating the
+	 * transitions again.
+	 *
+	 * @param mdp the new rewards
+	 * @return the same model as {@code mdp.compile(getStates())}
+	 */
+	public CompiledMDP withRewards(TTTMDP mdp) {
+		return new CompiledMDP(this, mdp);
+	}
+
+	/**
+	 *
+	 * @return the state index the model is defined on
+	 */
+	public StateIndex getStates() {
+		return states;
+	}
+
+	/**
+	 *
+	 * @return the number of states
+	 */
+	public int numStates() {
+		return actionStart.length - 1;
+	}
+
+	/**
+	 *
+	 * @return the number of (state, action) pairs
+	 */
+	public int numActions() {
+		return actionCell.length;
+	}
+
+	/**
+	 *
+	 * @return the number of transitions
+	 */
+	public int numTransitions() {
+		return next.length;
+	}
+
+	/**
+	 *
+	 * @param s a state id
+	 * @return true if {@code s} has no actions, i.e. the game is over
+	 */
+	public boolean isTerminal(int s) {
+		return actionStart[s] == actionStart[s + 1];
+	}
+
+	/**
+	 * The expected reward plus discounted value of the next state, for action
+	 * {@code a}.
+	 *
+	 * @param a        an action id
+	 * @param values   state values, indexed by state id
+	 * @param discount
+	 * @return the q-value of {@code a} under {@code values}
+	 */
+	public double qValue(int a, double[] values, double discount) {
+		double q = 0;
+		for (int t = transitionStart[a]; t < transitionStart[a + 1]; t++)
+			q += prob[t] * (reward[t] + discount * values[next[t]]);
+		return q;
+	}
+
+	/**
+	 *
+	 * @param s    a state id
+	 * @param cell a cell, in the state's game
+	 * @return the id of the action of {@code s} that plays in {@code cell}, or -1
+	 */
+	public int actionOf(int s, int cell) {
+		for (int a = actionStart[s]; a < actionStart[s + 1]; a++)
+			if (actionCell[a] == cell)
+				return a;
+		return -1;
+	}
+
+}
@@ -18,12 +18,9 @@ public Move getMove(Game g) {
 		
 		for(Move m: moves)
 		{
-			Game resulting=g.clone();
-			resulting.getBoard()[m.x][m.y]=m.who.getName();
-			resulting.evaluateGameState();
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
+			if (g.isWinningMove(m.who, m.cell))
 			{
-				Move newMove=new Move(m.who.getName()=='X'?'O':'X', m.x,m.y);
+				Move newMove=Move.of(m.who=='X'?'O':'X', m.cell);
 				System.out.println("Playing defensive move");
 				return newMove;
 			}
@@ -32,7 +29,7 @@ public Move getMove(Game g) {
 		Random r=new Random();
 		System.out.println("Playing random move");
 		Move randomMove=moves.get(r.nextInt(moves.size()));
-		Move myMove=new Move(randomMove.who.getName()=='X'?'O':'X', randomMove.x,randomMove.y);
+		Move myMove=Move.of(randomMove.who=='X'?'O':'X', randomMove.cell);
 		
 		return myMove;
 		
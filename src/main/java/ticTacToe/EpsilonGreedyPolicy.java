@@ -1,13 +1,90 @@
 package ticTacToe;
 
+import java.util.Random;
+
 /**
- * to do for next year
+ * An epsilon-greedy policy: with probability {@code epsilon} it explores,
+ * playing a move picked uniformly at random, and otherwise it exploits,
+ * playing the move of a greedy policy.
+ *
+ * Built on a {@link QTable}, the greedy moves are read from the table's
+ * {@link QTable#argmax(int)} every time, so the policy follows the q-values as
+ * they are learned and choosing a move does not scan the q-values. It can also
+ * be built on any other policy, e.g. a snapshot of a table's
+ * {@link QTable#greedyPolicy()}.
+ *
  * @author Mohammed Faiz Iqbal
  *
  */
 public class EpsilonGreedyPolicy extends Policy {
-	
-	
-	
+
+	/**
+	 * the policy played when not exploring
+	 */
+	final Policy greedy;
+
+	/**
+	 * the probability of playing a random move
+	 */
+	final double epsilon;
+
+	final Random random;
+
+	/**
+	 *
+	 * @param qTable
+	 * @param epsilon the probability of exploring, between 0 and 1
+	 */
+	public EpsilonGreedyPolicy(QTable qTable, double epsilon) {
+		this(qTable, epsilon, new Random());
+	}
+
+	/**
+	 *
+	 * @param qTable
+	 * @param epsilon the probability of exploring, between 0 and 1
+	 * @param random  the source of the exploration, e.g. seeded for reproducible
+	 *                runs
+	 */
+	public EpsilonGreedyPolicy(QTable qTable, double epsilon, Random random) {
+		// the table's argmax array itself, not a copy: a live view
+		this(new IndexedPolicy(qTable.getStates(), qTable.argmax), epsilon, random);
+	}
+
+	/**
+	 *
+	 * @param greedy  the policy to play when not exploring
+	 * @param epsilon the probability of exploring, between 0 and 1
+	 * @param random  the source of the exploration
+	 */
+	public EpsilonGreedyPolicy(Policy greedy, double epsilon, Random random) {
+		if (epsilon < 0 || epsilon > 1)
+			throw new IllegalArgumentException("epsilon should be between 0 and 1");
+		this.greedy = greedy;
+		this.epsilon = epsilon;
+		this.random = random;
+	}
+
+	/**
+	 * Returns a random move with probability {@code epsilon}, the greedy move
+	 * otherwise. Null if {@code g} is over.
+	 */
+	@Override
+	public Move getMove(Game g) {
+		if (g.isTerminal())
+			return null;
+
+		if (random.nextDouble() < epsilon) {
+			int empty = g.getEmptyCells();
+
+			// drop k random empty cells, then play the lowest one left
+			for (int k = random.nextInt(Integer.bitCount(empty)); k > 0; k--)
+				empty &= empty - 1;
+
+			return Move.of(g.getTurn(), Integer.numberOfTrailingZeros(empty));
+		}
+
+		return greedy.getMove(g);
+	}
 
 }
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.IntConsumer;
 
 /**
  * This is a class that defines the environment of a Tic Tac Toe Game: its
@@ -37,7 +38,53 @@ public class Game {
 	 */
 	int state = 0;
 
-	char[][] board = new char[3][3];
+	/**
+	 * The board as two 9-bit occupancy masks, one per player. Cell (i,j) is bit
+	 * {@code 3*i+j}, i.e. the same 0..8 numbering shown by {@link HumanAgent}.
+	 */
+	int xMask;
+	int oMask;
+
+	/**
+	 * whose turn it is: 0 when it is X's turn, 1 when it is O's turn.
+	 */
+	int turn;
+
+	/**
+	 * The cached {@link #hashCode()}: the board and turn as a 10 digit base 3
+	 * number. It is kept up to date by every method that changes the position.
+	 */
+	int hash;
+
+	/**
+	 * number of marks on the board. The game is a draw when this reaches 9
+	 * without a line.
+	 */
+	int moveCount;
+
+	/**
+	 * The moves played on this game object, most recent last, so {@link #pop()}
+	 * can undo them. Each entry is the cell played and the {@link #state} before
+	 * the move, {@code cell | state << 4}. Allocated on first use and not copied
+	 * by {@link #Game(Game)}: a copy starts with an empty history.
+	 */
+	private int[] history;
+	private int historySize;
+
+	/**
+	 * true for the shared, immutable instances handed out by
+	 * {@link GameStateRegistry}. Methods that change the position refuse to run on
+	 * these; {@link #clone()} them first.
+	 */
+	boolean shared = false;
+
+	/**
+	 * For shared games only: the representative of this game's symmetry orbit and
+	 * the {@link Symmetry} that maps this game onto it. Set by
+	 * {@link GameStateRegistry}; computed on demand for other games.
+	 */
+	Game canonical;
+	int symmetry;
 
 	/**
 	 * the X agent
@@ -49,7 +96,55 @@ public class Game {
 	 */
 	Agent o;
 
-	Agent whoseTurn;
+	/**
+	 * The eight winning lines as cell masks: three rows, three columns and the two
+	 * diagonals.
+	 */
+	static final int[] LINES = { 0x007, 0x038, 0x1C0, 0x049, 0x092, 0x124, 0x111, 0x054 };
+
+	/**
+	 * The base 3 place value of each cell in the hash: cell {@code c} is the digit
+	 * multiplied by {@code CELL_WEIGHT[c] = 3^(9-c)}.
+	 */
+	static final int[] CELL_WEIGHT = { 19683, 6561, 2187, 729, 243, 81, 27, 9, 3 };
+
+	/**
+	 * Number of possible hash values: 3^10
+	 */
+	static final int NUM_HASHES = 59049;
+
+	/**
+	 * TERNARY[mask] is the sum of the {@link #CELL_WEIGHT}s of the cells in mask,
+	 * so a position hashes to {@code TERNARY[xMask] + 2 * TERNARY[oMask] + turn + 1}.
+	 */
+	static final int[] TERNARY = new int[512];
+
+	static {
+		for (int mask = 0; mask < 512; mask++)
+			for (int cell = 0; cell < 9; cell++)
+				if ((mask & (1 << cell)) != 0)
+					TERNARY[mask] += CELL_WEIGHT[cell];
+	}
+
+	/**
+	 * For each cell, the {@link #LINES} that pass through it: two for an edge,
+	 * three for a corner and four for the centre.
+	 */
+	static final int[][] LINES_THROUGH = new int[9][];
+
+	static {
+		for (int cell = 0; cell < 9; cell++) {
+			int n = 0;
+			for (int line : LINES)
+				if ((line & (1 << cell)) != 0)
+					n++;
+			LINES_THROUGH[cell] = new int[n];
+			n = 0;
+			for (int line : LINES)
+				if ((line & (1 << cell)) != 0)
+					LINES_THROUGH[cell][n++] = line;
+		}
+	}
 
 	/**
 	 * new game with new X and O agents with null policies
@@ -79,9 +174,11 @@ public class Game {
 		if (whoseTurn != 'X' && whoseTurn != 'O')
 			throw new IllegalArgumentException("Argument should be either 'X' or 'O'");
 		else if (whoseTurn == 'X')
-			this.whoseTurn = x;
+			this.turn = 0;
 		else
-			this.whoseTurn = o;
+			this.turn = 1;
+
+		this.hash = computeHash();
 
 	}
 
@@ -101,7 +198,7 @@ public class Game {
 		if (whoseTurn != x && whoseTurn != o)
 			throw new IllegalArgumentException("Agent with current turn is not one of the game agents");
 
-		this.whoseTurn = whoseTurn;
+		this.turn = (whoseTurn == x) ? 0 : 1;
 
 		initBoard();
 
@@ -114,32 +211,136 @@ public class Game {
 	public Game(Game g) {
 		this.x = g.x;
 		this.o = g.o;
-		this.whoseTurn = g.whoseTurn;
+		this.turn = g.turn;
 		// WARNING: Currently Agents are not deep copied
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				this.board[i][j] = g.board[i][j];
+		this.xMask = g.xMask;
+		this.oMask = g.oMask;
+		this.state = g.state;
+		this.hash = g.hash;
+		this.moveCount = g.moveCount;
 
 	}
 
 	public void initBoard() {
-		// fill the board with e's (empty cells)
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				board[i][j] = ' ';
+		checkNotShared();
+		// empty the board
+		xMask = 0;
+		oMask = 0;
+		moveCount = 0;
+		historySize = 0;
+		hash = computeHash();
+
+	}
 
+	/**
+	 * 
+	 * @return the agent whose turn it is
+	 */
+	public Agent getWhoseTurn() {
+		return (turn == 0) ? x : o;
+	}
+
+	/**
+	 * 
+	 * @return 'X' or 'O', whichever's turn it is
+	 */
+	public char getTurn() {
+		return (turn == 0) ? 'X' : 'O';
+	}
+
+	/**
+	 * 
+	 * @param cell the cell index, 3*i+j
+	 * @return the content of the cell: 'X', 'O' or ' '
+	 */
+	char getCell(int cell) {
+		int bit = 1 << cell;
+		if ((xMask & bit) != 0)
+			return 'X';
+		if ((oMask & bit) != 0)
+			return 'O';
+		return ' ';
+	}
+
+	/**
+	 * 
+	 * @throws IllegalStateException if this is a shared {@link GameStateRegistry}
+	 *                               instance
+	 */
+	private void checkNotShared() {
+		if (shared)
+			throw new IllegalStateException("Shared registry games can't be changed. Use clone() to get a copy.");
+	}
+
+	/**
+	 * 
+	 * @param cell an empty cell, 3*i+j
+	 * @return the {@link #hashCode()} of the game after the player whose turn it
+	 *         is plays in {@code cell}
+	 */
+	int successorHash(int cell) {
+		return (turn == 0) ? hash + CELL_WEIGHT[cell] + 1 : hash + 2 * CELL_WEIGHT[cell] - 1;
+	}
+
+	/**
+	 * Builds a new game where the player whose turn it is has played in
+	 * {@code cell}. No checks are done, and the registry is not consulted.
+	 * 
+	 * @param cell an empty cell, 3*i+j
+	 * @return a new, unshared game
+	 */
+	Game newSuccessor(int cell) {
+		Game copy = new Game(this);
+		copy.place(cell);
+		copy.evaluateGameState(cell);
+		return copy;
+	}
+
+	/**
+	 * Places the mark of the player whose turn it is on an empty cell, hands the
+	 * turn over and updates the cached hash. Does not re-evaluate the game state.
+	 * 
+	 * @param cell the cell index, 3*i+j
+	 */
+	private void place(int cell) {
+		if (turn == 0) {
+			xMask |= 1 << cell;
+			hash += CELL_WEIGHT[cell] + 1;
+		} else {
+			oMask |= 1 << cell;
+			hash += 2 * CELL_WEIGHT[cell] - 1;
+		}
+		turn ^= 1;
+		moveCount++;
+	}
+
+	/**
+	 * Tells us whether {@code who} would complete a line by playing in
+	 * {@code cell}, without playing the move. Only the lines through the cell are
+	 * tested.
+	 * 
+	 * @param who  'X' or 'O'
+	 * @param cell the cell index, 3*i+j
+	 * @return true if the move wins the game
+	 */
+	public boolean isWinningMove(char who, int cell) {
+		int mask = ((who == 'X') ? xMask : oMask) | (1 << cell);
+		for (int line : LINES_THROUGH[cell])
+			if ((mask & line) == line)
+				return true;
+		return false;
 	}
 
 	public boolean isLegal(Move m) {
 		if (m.x < 0 || m.x > 2 || m.y < 0 || m.y > 2)
 			return false;
 
-		if (m.who.getName() != whoseTurn.getName()) {
+		if (m.who != getTurn()) {
 			return false;
 		}
 
-		if (board[m.x][m.y] != ' ')
+		if (((xMask | oMask) & (1 << m.cell)) != 0)
 			return false;
 
 		return true;
@@ -153,55 +354,80 @@ public class Game {
 	 */
 	public List<Game> getAllSuccessorGames() {
 		List<Game> result = new ArrayList<Game>();
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					Game newGame = null;
-					try {
-						newGame = this.simulateMove(whoseTurn.getName(), i, j);
-					} catch (IllegalMoveException e) {
-						System.out.println(e.getMessage());
-						e.printStackTrace();
-					}
-					// System.out.println("Adding:\n"+newGame);
-					result.add(newGame);
-				}
-			}
+		for (int empty = getEmptyCells(); empty != 0; empty &= empty - 1)
+			result.add(getSuccessor(Integer.numberOfTrailingZeros(empty)));
 
 		return result;
 
 	}
 
+	/**
+	 * The empty cells of the board as a bit mask, bit {@code 3*i+j} being cell
+	 * (i,j). Use this to enumerate moves or successors without allocating
+	 * anything:
+	 * 
+	 * <pre>
+	 * for (int empty = g.getEmptyCells(); empty != 0; empty &amp;= empty - 1) {
+	 * 	int cell = Integer.numberOfTrailingZeros(empty);
+	 * 	Move m = Move.of(g.getTurn(), cell);
+	 * 	Game next = g.getSuccessor(cell);
+	 * 	...
+	 * }
+	 * </pre>
+	 * 
+	 * Note that the cells are returned whether or not the game is over.
+	 * 
+	 * @return the empty cell mask
+	 */
+	public int getEmptyCells() {
+		return ~(xMask | oMask) & 0x1FF;
+	}
+
+	/**
+	 * Calls {@code action} with the index (3*i+j) of every empty cell, in
+	 * increasing order.
+	 * 
+	 * @param action
+	 */
+	public void forEachEmptyCell(IntConsumer action) {
+		for (int empty = getEmptyCells(); empty != 0; empty &= empty - 1)
+			action.accept(Integer.numberOfTrailingZeros(empty));
+	}
+
+	/**
+	 * The game after the player whose turn it is plays in {@code cell}. Like
+	 * {@link #simulateMove(Move)}, this returns the shared
+	 * {@link GameStateRegistry} instance when there is one.
+	 * 
+	 * @param cell an empty cell, 3*i+j
+	 * @return the resulting game
+	 */
+	public Game getSuccessor(int cell) {
+		if ((getEmptyCells() & (1 << cell)) == 0)
+			throw new IllegalArgumentException("Cell " + cell + " is not empty");
+
+		Game next = GameStateRegistry.get(successorHash(cell));
+		if (next != null)
+			return next;
+
+		return newSuccessor(cell);
+	}
+
 	/**
 	 * A static method to generate all valid game states where it is either X's turn
 	 * or O's turn as specified by {@code xo} argument. NOTE: this method will
 	 * include ALL terminal states in the game.
 	 * 
+	 * The games are those reachable in legal play from an empty board, whoever
+	 * starts, ordered by ply. They are enumerated once by
+	 * {@link GameStateRegistry}, so the list is shared and unmodifiable and the
+	 * games are the immutable registry instances.
+	 * 
 	 * @param xo specifies whose turn it should be in the resulting games.
 	 * @return
 	 */
 	public static List<Game> generateAllValidGames(char xo) {
-		List<Game> result = new ArrayList<Game>();
-		// this is the number of possible game hashes (2222222222 in base 3): 59048 -
-		// not all are valid. Here we only return the valid ones.
-		for (int i = 0; i < 59048; i++) {
-			Game g = inverseHash(i);
-			if (g == null)
-				continue;
-
-			if (g.isValid()) {
-				// System.out.println("for:"+i);
-				// System.out.println("got:\n"+g);
-				// System.out.println("turn:"+g.whoseTurn.getName());
-				// System.out.println("--------");
-				g.evaluateGameState();
-				if (g.whoseTurn.getName() == xo || g.isTerminal())
-					result.add(g);
-			}
-
-		}
-
-		return result;
+		return GameStateRegistry.getValidGames(xo);
 	}
 
 	/**
@@ -215,11 +441,8 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move(whoseTurn, i, j));
-			}
+		for (int empty = getEmptyCells(); empty != 0; empty &= empty - 1)
+			possibleMoves.add(Move.of(getTurn(), Integer.numberOfTrailingZeros(empty)));
 
 		return possibleMoves;
 
@@ -237,17 +460,25 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move((whoseTurn.getName() == 'X') ? 'O' : 'X', i, j));
-			}
+		char opponent = (getTurn() == 'X') ? 'O' : 'X';
+		for (int empty = getEmptyCells(); empty != 0; empty &= empty - 1)
+			possibleMoves.add(Move.of(opponent, Integer.numberOfTrailingZeros(empty)));
 
 		return possibleMoves;
 
 	}
 
+	/**
+	 * A compatibility view of the board as a {@code char[3][3]} of 'X', 'O' and
+	 * ' '. The array is a fresh copy: writing to it does not change the game.
+	 * 
+	 * @return the board
+	 */
 	public char[][] getBoard() {
+		char[][] board = new char[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				board[i][j] = getCell(3 * i + j);
 		return board;
 	}
 
@@ -256,7 +487,7 @@ public class Game {
 		for (int i = 0; i < 3; i++) {
 			result += "|";
 			for (int j = 0; j < 3; j++) {
-				result += board[i][j] + "|";
+				result += getCell(3 * i + j) + "|";
 
 			}
 			result += "\n";
@@ -275,113 +506,56 @@ public class Game {
 	 */
 	public int evaluateGameState() {
 
-		// checking columns
-		if (board[0][0] != ' ' && board[0][0] == board[0][1] && board[0][1] == board[0][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[1][0] != ' ' && board[1][0] == board[1][1] && board[1][1] == board[1][2]) {
-			if (board[1][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[2][0] != ' ' && board[2][0] == board[2][1] && board[2][1] == board[2][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking rows
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][0] && board[1][0] == board[2][0]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][1] != ' ' && board[0][1] == board[1][1] && board[1][1] == board[2][1]) {
-			if (board[0][1] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][2] != ' ' && board[0][2] == board[1][2] && board[1][2] == board[2][2]) {
-			if (board[0][2] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking diagnols
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][1] && board[1][1] == board[2][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
+		if (hasLine(xMask))
+			this.state = X_WON;
+		else if (hasLine(oMask))
+			this.state = O_WON;
+		else if (moveCount == 9)
+			this.state = DRAW;
+		else
+			this.state = ONGOING;
 
-		if (board[2][0] != ' ' && board[2][0] == board[1][1] && board[1][1] == board[0][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
+		return this.state;
 
-			return this.state;
+	}
 
-		}
+	/**
+	 * Same as {@link #evaluateGameState()}, but after a move in {@code cell} of an
+	 * ongoing game: only the lines through that cell can have been completed, and
+	 * the move counter tells us if the board is full.
+	 * 
+	 * @param cell the cell that was just played
+	 * @return an integer representing the game state
+	 */
+	private int evaluateGameState(int cell) {
+		if (this.state != ONGOING)
+			return evaluateGameState();
 
-		boolean spacesLeft = false;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					spacesLeft = true;
-					break;
+		int mask = (turn == 0) ? oMask : xMask; // the player who just moved
+		for (int line : LINES_THROUGH[cell])
+			if ((mask & line) == line)
+				return this.state = (turn == 0) ? O_WON : X_WON;
 
-				}
-			}
-
-		if (spacesLeft)
-			this.state = ONGOING;
-		else
+		if (moveCount == 9)
 			this.state = DRAW;
 
 		return this.state;
+	}
 
+	/**
+	 * 
+	 * @param mask an occupancy mask
+	 * @return true if the mask covers at least one of the {@link #LINES}
+	 */
+	static boolean hasLine(int mask) {
+		for (int line : LINES)
+			if ((mask & line) == line)
+				return true;
+		return false;
 	}
 
 	private int count(char xo) {
-		int count = 0;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				if (board[i][j] == xo)
-					count++;
-		return count;
+		return Integer.bitCount((xo == 'X') ? xMask : oMask);
 	}
 
 	/**
@@ -395,9 +569,9 @@ public class Game {
 		if (Math.abs(xs - os) > 1)
 			return false;
 
-		if (xs > os && this.whoseTurn.getName() == 'X')
+		if (xs > os && getTurn() == 'X')
 			return false;
-		else if (xs < os && this.whoseTurn.getName() == 'O')
+		else if (xs < os && getTurn() == 'O')
 			return false;
 
 		return true;
@@ -414,7 +588,7 @@ public class Game {
 	 * @return
 	 */
 	public Game simulateMove(char who, int x, int y) throws IllegalMoveException {
-		Move m = new Move(who, x, y);
+		Move m = Move.of(who, x, y);
 		return simulateMove(m);
 
 	}
@@ -423,31 +597,24 @@ public class Game {
 	 * Executes the move m on the current game. Returns the resulting game without
 	 * changing the current one.
 	 * 
+	 * The returned game is the shared instance from {@link GameStateRegistry}
+	 * whenever the resulting position is reachable, so it must not be changed.
+	 * 
 	 * @param m
 	 * @return the Game after the move has been executed.
 	 */
 	public Game simulateMove(Move m) throws IllegalMoveException {
-		if (whoseTurn == x && m.who.getName() != 'X')
+		if (turn == 0 && m.who != 'X')
 			throw new IllegalMoveException("it is not x's turn");
 
-		if (whoseTurn == o && m.who.getName() != 'O')
+		if (turn == 1 && m.who != 'O')
 			throw new IllegalMoveException("it is not o's turn");
 
-		if (board[m.x][m.y] != ' ')
+		int cell = m.cell;
+		if (((xMask | oMask) & (1 << cell)) != 0)
 			throw new IllegalMoveException("Invalid move. The square is " + m);
 
-		Game copy = clone();
-		copy.board[m.x][m.y] = m.who.getName();
-		if (m.who.getName() == 'X')
-			copy.whoseTurn = copy.o;
-		else if (m.who.getName() == 'O')
-			copy.whoseTurn = copy.x;
-		else
-			throw new IllegalArgumentException();
-
-		copy.evaluateGameState();
-
-		return copy;
+		return getSuccessor(cell);
 
 	}
 
@@ -457,25 +624,98 @@ public class Game {
 	 * @param m
 	 */
 	public void executeMove(Move m) throws IllegalMoveException {
-		if (whoseTurn == x && m.who.getName() != 'X')
+		checkNotShared();
+		if (turn == 0 && m.who != 'X')
 			throw new IllegalMoveException("it is not O's turn");
 
-		if (whoseTurn == o && m.who.getName() != 'O')
+		if (turn == 1 && m.who != 'O')
 			throw new IllegalMoveException("it is not X's turn");
 
-		if (board[m.x][m.y] != ' ')
+		int cell = m.cell;
+		if (((xMask | oMask) & (1 << cell)) != 0)
 			throw new IllegalMoveException("Invalid move. The location (" + m.x + "," + m.y + ") is not empty");
 
-		board[m.x][m.y] = m.who.getName();
-		if (whoseTurn.getName() == 'X')
-			whoseTurn = o;
-		else if (m.who.getName() == 'O')
-			whoseTurn = x;
-		else
-			throw new IllegalArgumentException();
+		record(cell);
+		place(cell);
+
+		this.evaluateGameState(cell);
+
+	}
+
+	/**
+	 * Plays {@code m} on this game, like {@link #executeMove(Move)}, and remembers
+	 * it so that {@link #pop()} can take it back. Together they let a depth first
+	 * search walk the game tree on a single game object, in O(1) per move and
+	 * without allocating.
+	 * 
+	 * @param m
+	 * @throws IllegalMoveException if it's not {@code m.who}'s turn or the cell is
+	 *                              taken
+	 */
+	public void push(Move m) throws IllegalMoveException {
+		executeMove(m);
+	}
+
+	/**
+	 * Lets the player whose turn it is play in {@code cell}, and remembers the
+	 * move for {@link #pop()}. Only the cell is checked.
+	 * 
+	 * @param cell an empty cell, 3*i+j
+	 * @throws IllegalArgumentException if the cell is not empty
+	 */
+	public void push(int cell) {
+		checkNotShared();
+		if (((xMask | oMask) & (1 << cell)) != 0)
+			throw new IllegalArgumentException("The cell " + cell + " is not empty");
+
+		record(cell);
+		place(cell);
+		evaluateGameState(cell);
+	}
+
+	/**
+	 * Takes back the last move played on this game object by {@link #push(Move)}
+	 * or {@link #executeMove(Move)}, restoring the board, the turn, the game state
+	 * and the hash.
+	 * 
+	 * @return the move taken back
+	 * @throws IllegalStateException if no move is left to take back
+	 */
+	public Move pop() {
+		checkNotShared();
+		if (historySize == 0)
+			throw new IllegalStateException("No move to take back");
+
+		int entry = history[--historySize];
+		int cell = entry & 0xF;
+		turn ^= 1;
+		if (turn == 0) {
+			xMask &= ~(1 << cell);
+			hash -= CELL_WEIGHT[cell] + 1;
+		} else {
+			oMask &= ~(1 << cell);
+			hash -= 2 * CELL_WEIGHT[cell] - 1;
+		}
+		moveCount--;
+		state = entry >> 4;
+		return Move.of(getTurn(), cell);
+	}
 
-		this.evaluateGameState();
+	/**
+	 * 
+	 * @return the number of moves {@link #pop()} can take back
+	 */
+	public int getHistorySize() {
+		return historySize;
+	}
 
+	/**
+	 * Pushes {@code cell} and the current state onto {@link #history}.
+	 */
+	private void record(int cell) {
+		if (history == null)
+			history = new int[9];
+		history[historySize++] = cell | (state << 4);
 	}
 
 	/**
@@ -487,7 +727,7 @@ public class Game {
 	 * @param y   the y coordinate of the move (between 0 and 2 inclusive)
 	 */
 	public void executeMove(char who, int x, int y) throws IllegalMoveException {
-		Move m = new Move(who, x, y);
+		Move m = Move.of(who, x, y);
 		executeMove(m);
 
 	}
@@ -503,7 +743,7 @@ public class Game {
 
 		while (this.state == ONGOING) {
 
-			Move m = this.whoseTurn.getMove(this);
+			Move m = this.getWhoseTurn().getMove(this);
 			// if (!(this.whoseTurn instanceof ValueIterationAgent))
 			// {
 			// System.out.println("----successors----");
@@ -532,7 +772,7 @@ public class Game {
 	}
 
 	/**
-	 * Deep copy
+	 * Deep copy. The copy is never shared, even if this game is.
 	 */
 	public Game clone() {
 		return new Game(this);
@@ -553,31 +793,114 @@ public class Game {
 	 * @return an integer representation of the game
 	 */
 	public int hashCode() {
-		// ' ' ->0
-		// 'X' ->1
-		// 'O' ->2
-		String s = "";
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				switch (board[i][j]) {
-				case 'X':
-					s += "1";
-					break;
-				case 'O':
-					s += "2";
-					break;
-				case ' ':
-					s += "0";
-					break;
-				}
+		return hash;
+	}
 
+	/**
+	 * Computes the hash from scratch: ' ' maps to 0, 'X' to 1 and 'O' to 2, and
+	 * the last digit is 1 or 2 for X's or O's turn.
+	 * 
+	 * @return the hash of the current position
+	 */
+	private int computeHash() {
+		return hashOf(xMask, oMask, turn);
+	}
+
+	/**
+	 * 
+	 * @param xMask the X occupancy mask
+	 * @param oMask the O occupancy mask
+	 * @param turn  0 for X's turn, 1 for O's turn
+	 * @return the {@link #hashCode()} of the position
+	 */
+	static int hashOf(int xMask, int oMask, int turn) {
+		return TERNARY[xMask] + 2 * TERNARY[oMask] + turn + 1;
+	}
+
+	/**
+	 * The same position seen through symmetry {@code t}: every mark is moved by
+	 * {@link Symmetry#cell(int, int)}, and it is the same player's turn.
+	 * 
+	 * @param t a {@link Symmetry}, 0 to 7
+	 * @return the shared {@link GameStateRegistry} game if there is one, otherwise
+	 *         a new game
+	 */
+	public Game transform(int t) {
+		int x = Symmetry.mask(t, xMask);
+		int o = Symmetry.mask(t, oMask);
+		Game shared = GameStateRegistry.get(hashOf(x, o, turn));
+		if (shared != null)
+			return shared;
+
+		Game g = new Game(this);
+		g.xMask = x;
+		g.oMask = o;
+		g.hash = hashOf(x, o, turn);
+		g.evaluateGameState();
+		return g;
+	}
+
+	/**
+	 * 
+	 * @return the symmetry that maps this game onto its {@link #canonical()}
+	 *         representative
+	 */
+	public int canonicalTransform() {
+		if (canonical != null)
+			return symmetry;
+
+		int best = Symmetry.IDENTITY;
+		int bestHash = hash;
+		for (int t = 1; t < Symmetry.COUNT; t++) {
+			int h = hashOf(Symmetry.mask(t, xMask), Symmetry.mask(t, oMask), turn);
+			if (h < bestHash) {
+				best = t;
+				bestHash = h;
 			}
-		// also encode whose turn it is. Either 1 or 2 (x or o)
+		}
+		return best;
+	}
+
+	/**
+	 * The representative of this game's orbit under the eight board
+	 * {@link Symmetry}s: the transformed game with the smallest hash. All the
+	 * games in an orbit have the same value, so tables can store one entry per
+	 * orbit, keyed by the representative.
+	 * 
+	 * @return the canonical game, which is {@code transform(canonicalTransform())}
+	 */
+	public Game canonical() {
+		if (canonical != null)
+			return canonical;
+
+		return transform(canonicalTransform());
+	}
 
-		s += (whoseTurn == x) ? "1" : "2";
+	/**
+	 * 
+	 * @param m a move in this game
+	 * @return the corresponding move in {@link #canonical()}
+	 */
+	public Move toCanonical(Move m) {
+		return Symmetry.move(canonicalTransform(), m);
+	}
 
-		return Integer.parseInt(s, 3);
+	/**
+	 * 
+	 * @param m a move in {@link #canonical()}
+	 * @return the corresponding move in this game
+	 */
+	public Move fromCanonical(Move m) {
+		return Symmetry.move(Symmetry.inverse(canonicalTransform()), m);
+	}
 
+	/**
+	 * 
+	 * @param cell a cell in {@link #canonical()}
+	 * @return the corresponding cell in this game
+	 */
+	public int fromCanonical(int cell) {
+		return Symmetry.cell(Symmetry.inverse(canonicalTransform()), cell);
 	}
 
 	/**
@@ -588,48 +911,28 @@ public class Game {
 	 * You can use this method to read your policy or value functions from file.
 	 * 
 	 * @param hash
-	 * @return the Game corresponding to the hash
+	 * @return the Game corresponding to the hash, or null if the hash does not
+	 *         encode whose turn it is.
 	 */
 	public static Game inverseHash(int hash) {
-
-		Game g = new Game();
-
-		String s1 = Integer.toString(hash, 3);
-
-		if (s1.charAt(s1.length() - 1) == '0')
+		if (hash < 0 || hash >= NUM_HASHES || hash % 3 == 0)
 			return null;
 
-		// add leading 0's
-		String s = new String(s1);
-
-		for (int i = 0; i < 10 - s1.length(); i++) {
-			s = "0" + s;
-		}
-		// System.out.println("Intermediate string:"+s);
-		// set whose turn
-		if (s.charAt(s.length() - 1) == '1')
-			g.whoseTurn = g.x;
-		else if (s.charAt(s.length() - 1) == '2')
-			g.whoseTurn = g.o;
-
-		for (int l = s.length() - 2; l >= 0; l--) {
-			int i = (int) l / 3;
-			int j = (int) l % 3;
-			switch (s.charAt(l)) {
-			case '0':
-				g.board[i][j] = ' ';
-				break;
-			case '1':
-				g.board[i][j] = 'X';
-				break;
-			case '2':
-				g.board[i][j] = 'O';
-				break;
-			default:
-				throw new IllegalStateException("this shouldn't happen!");
-
-			}
+		Game g = new Game();
+		// the last digit is whose turn it is, the previous nine are the cells in
+		// reverse order.
+		g.turn = hash % 3 - 1;
+		int rest = hash / 3;
+		for (int cell = 8; cell >= 0; cell--) {
+			int d = rest % 3;
+			if (d == 1)
+				g.xMask |= 1 << cell;
+			else if (d == 2)
+				g.oMask |= 1 << cell;
+			rest /= 3;
 		}
+		g.hash = hash;
+		g.moveCount = Integer.bitCount(g.xMask | g.oMask);
 
 		return g;
 	}
@@ -640,7 +943,8 @@ public class Game {
 		else if (!(other instanceof Game))
 			return false;
 
-		return this.hashCode() == other.hashCode();
+		Game g = (Game) other;
+		return this.xMask == g.xMask && this.oMask == g.oMask && this.turn == g.turn;
 	}
 
 	public int getState() {
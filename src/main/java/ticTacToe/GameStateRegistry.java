@@ -0,0 +1,180 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A registry of every Tic-Tac-Toe position that can be reached in legal play,
+ * whether X or O starts the game. Each position is created exactly once, when
+ * this class is loaded, and the same immutable {@link Game} instance is handed
+ * out every time it is asked for. The id of a position is its
+ * {@link Game#hashCode()}.
+ *
+ * {@link Game#simulateMove(Move)} returns these shared instances, so planners
+ * and learners can explore the game without allocating new games. Shared games
+ * can't be changed: {@link Game#clone()} one to get a game you can play on.
+ *
+ * The registry also groups the positions by ply (number of marks on the board),
+ * and provides the state sets used by the planning and learning agents, see
+ * {@link Game#generateAllValidGames(char)}.
+ */
+public class GameStateRegistry {
+
+	/**
+	 * The shared games, indexed by their hash. Null where the hash is not a
+	 * reachable position.
+	 */
+	private static final Game[] games = new Game[Game.NUM_HASHES];
+
+	/**
+	 * the number of registered positions
+	 */
+	private static int size = 0;
+
+	/**
+	 * byPly.get(p) holds the registered games with p marks on the board, in hash
+	 * order.
+	 */
+	private static final List<List<Game>> byPly;
+
+	/**
+	 * The games where it is X's (resp. O's) turn or the game is over, by ply.
+	 */
+	private static final List<Game> xGames;
+	private static final List<Game> oGames;
+
+	static {
+		register(new Game('X'));
+		register(new Game('O'));
+
+		// every symmetry of a reachable game is reachable, so the representative is
+		// always in the registry.
+		for (Game g : games)
+			if (g != null) {
+				int t = g.canonicalTransform();
+				g.canonical = g.transform(t);
+				g.symmetry = t;
+			}
+
+		List<List<Game>> plies = new ArrayList<List<Game>>();
+		for (int p = 0; p <= 9; p++)
+			plies.add(new ArrayList<Game>());
+		for (Game g : games)
+			if (g != null)
+				plies.get(g.moveCount).add(g);
+
+		List<Game> x = new ArrayList<Game>();
+		List<Game> o = new ArrayList<Game>();
+		for (int p = 0; p <= 9; p++) {
+			for (Game g : plies.get(p)) {
+				if (g.isTerminal() || g.getTurn() == 'X')
+					x.add(g);
+				if (g.isTerminal() || g.getTurn() == 'O')
+					o.add(g);
+			}
+			plies.set(p, Collections.unmodifiableList(plies.get(p)));
+		}
+		byPly = Collections.unmodifiableList(plies);
+		xGames = Collections.unmodifiableList(x);
+		oGames = Collections.unmodifiableList(o);
+	}
+
+	private GameStateRegistry() {
+	}
+
+	/**
+	 * Registers {@code root} and every position reachable from it, depth first.
+	 *
+	 * @param root an empty board
+	 */
+	private static void register(Game root) {
+		add(root);
+		explore(new Game(root));
+	}
+
+	/**
+	 * Registers the positions reachable from {@code g} that aren't registered yet.
+	 * The tree is walked on {@code g} itself with {@link Game#push(int)} and
+	 * {@link Game#pop()}; a copy is only made for a position seen for the first
+	 * time.
+	 *
+	 * @param g a registered position, left unchanged on return
+	 */
+	private static void explore(Game g) {
+		if (g.isTerminal())
+			return;
+
+		for (int empty = g.getEmptyCells(); empty != 0; empty &= empty - 1) {
+			int cell = Integer.numberOfTrailingZeros(empty);
+			if (games[g.successorHash(cell)] != null)
+				continue;
+
+			g.push(cell);
+			add(new Game(g));
+			explore(g);
+			g.pop();
+		}
+	}
+
+	private static void add(Game g) {
+		g.shared = true;
+		games[g.hashCode()] = g;
+		size++;
+	}
+
+	/**
+	 *
+	 * @param hash the id of a position, i.e. its {@link Game#hashCode()}
+	 * @return the shared game with this id, or null if the position can't be
+	 *         reached in legal play.
+	 */
+	public static Game get(int hash) {
+		if (hash < 0 || hash >= games.length)
+			return null;
+		return games[hash];
+	}
+
+	/**
+	 *
+	 * @param g any game
+	 * @return the shared instance equal to {@code g}, or {@code g} itself if its
+	 *         position can't be reached in legal play.
+	 */
+	public static Game intern(Game g) {
+		Game shared = get(g.hashCode());
+		return (shared == null) ? g : shared;
+	}
+
+	/**
+	 *
+	 * @param ply number of marks on the board, 0 to 9
+	 * @return the (unmodifiable) list of reachable games with {@code ply} marks
+	 */
+	public static List<Game> getGames(int ply) {
+		return byPly.get(ply);
+	}
+
+	/**
+	 *
+	 * @param xo 'X' or 'O'
+	 * @return the (unmodifiable) list of reachable games where it is {@code xo}'s
+	 *         turn or the game is over, ordered by ply
+	 */
+	public static List<Game> getValidGames(char xo) {
+		if (xo == 'X')
+			return xGames;
+		else if (xo == 'O')
+			return oGames;
+		throw new IllegalArgumentException("Argument should be either 'X' or 'O'");
+	}
+
+	/**
+	 *
+	 * @return the number of reachable positions in the registry
+	 */
+	public static int size() {
+		return size;
+	}
+
+}
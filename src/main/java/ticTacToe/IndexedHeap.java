@@ -0,0 +1,110 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * A max-heap of the ints {@code 0} to {@code n-1} (e.g. state ids), each with a
+ * priority, stored in primitive arrays. Unlike
+ * {@link java.util.PriorityQueue} it knows where every element is, so the
+ * priority of a queued element can be raised in O(log n), and it doesn't box.
+ */
+class IndexedHeap {
+
+	/**
+	 * the queued elements, in heap order
+	 */
+	private final int[] heap;
+
+	/**
+	 * element -> its position in {@link #heap}, or -1 if not queued
+	 */
+	private final int[] pos;
+
+	/**
+	 * element -> its priority, while queued
+	 */
+	private final double[] priority;
+
+	private int size = 0;
+
+	/**
+	 *
+	 * @param n the elements are 0 to n-1
+	 */
+	IndexedHeap(int n) {
+		this.heap = new int[n];
+		this.pos = new int[n];
+		this.priority = new double[n];
+		Arrays.fill(pos, -1);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Queues {@code i} with priority {@code p}, or raises its priority to
+	 * {@code p} if it is already queued with a lower one.
+	 */
+	void offer(int i, double p) {
+		if (pos[i] >= 0) {
+			if (p > priority[i]) {
+				priority[i] = p;
+				up(pos[i]);
+			}
+			return;
+		}
+		priority[i] = p;
+		heap[size] = i;
+		pos[i] = size;
+		up(size++);
+	}
+
+	/**
+	 * Removes the element with the highest priority.
+	 *
+	 * @return the element
+	 */
+	int poll() {
+		int top = heap[0];
+		pos[top] = -1;
+		if (--size > 0) {
+			heap[0] = heap[size];
+			pos[heap[0]] = 0;
+			down(0);
+		}
+		return top;
+	}
+
+	private void up(int k) {
+		int i = heap[k];
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			if (priority[heap[parent]] >= priority[i])
+				break;
+			heap[k] = heap[parent];
+			pos[heap[k]] = k;
+			k = parent;
+		}
+		heap[k] = i;
+		pos[i] = k;
+	}
+
+	private void down(int k) {
+		int i = heap[k];
+		int half = size >>> 1;
+		while (k < half) {
+			int child = 2 * k + 1;
+			if (child + 1 < size && priority[heap[child + 1]] > priority[heap[child]])
+				child++;
+			if (priority[i] >= priority[heap[child]])
+				break;
+			heap[k] = heap[child];
+			pos[heap[k]] = k;
+			k = child;
+		}
+		heap[k] = i;
+		pos[i] = k;
+	}
+
+}
@@ -0,0 +1,56 @@
+package ticTacToe;
+
+/**
+ * A policy stored as one byte per state: the cell (3*i+j) to play in the state
+ * with that id in a {@link StateIndex}, or -1 where the policy has no move (e.g.
+ * terminal states). This is the array counterpart of the map in
+ * {@link Policy#policy}.
+ *
+ * If the index is canonical, the cells are those of the orbit representatives
+ * and are mapped back to the game being played.
+ */
+public class IndexedPolicy extends Policy {
+
+	/**
+	 * the states the policy is defined on
+	 */
+	final StateIndex states;
+
+	/**
+	 * state id -> cell to play, or -1
+	 */
+	final byte[] cells;
+
+	/**
+	 *
+	 * @param states the state index
+	 * @param cells  the cell to play in each state, indexed by state id. The
+	 *               array is used as is, not copied.
+	 */
+	public IndexedPolicy(StateIndex states, byte[] cells) {
+		if (cells.length != states.size())
+			throw new IllegalArgumentException("Expected one cell per state");
+		this.states = states;
+		this.cells = cells;
+	}
+
+	/**
+	 * Returns the move for {@code g}, or null if {@code g} is not in the state
+	 * index or the policy has no move for it.
+	 */
+	@Override
+	public Move getMove(Game g) {
+		int id = states.indexOf(g);
+		if (id < 0 || cells[id] < 0)
+			return null;
+
+		if (!states.isCanonical())
+			return Move.of(g.getTurn(), cells[id]);
+
+		// the shared instance has its symmetry cached; the game being played would
+		// try all eight
+		Game shared = GameStateRegistry.intern(g);
+		return Move.of(g.getTurn(), shared.fromCanonical(cells[id]));
+	}
+
+}
@@ -0,0 +1,38 @@
+package ticTacToe;
+
+/**
+ * One setting of the discount factor and the rewards of the Tic-Tac-Toe MDP,
+ * i.e. the parameters taken by the {@link ValueIterationAgent} and
+ * {@link PolicyIterationAgent} constructors. Used to solve many settings at
+ * once with a {@link BatchSolver}, and to {@code replan} a trained agent.
+ */
+public class MDPConfig {
+
+	public final double discount;
+	public final double winReward;
+	public final double loseReward;
+	public final double livingReward;
+	public final double drawReward;
+
+	public MDPConfig(double discount, double winReward, double loseReward, double livingReward, double drawReward) {
+		this.discount = discount;
+		this.winReward = winReward;
+		this.loseReward = loseReward;
+		this.livingReward = livingReward;
+		this.drawReward = drawReward;
+	}
+
+	/**
+	 *
+	 * @return a {@link TTTMDP} with these rewards
+	 */
+	public TTTMDP toMDP() {
+		return new TTTMDP(winReward, loseReward, livingReward, drawReward);
+	}
+
+	public String toString() {
+		return "discount = " + discount + ", win = " + winReward + ", lose = " + loseReward + ", living = "
+				+ livingReward + ", draw = " + drawReward;
+	}
+
+}
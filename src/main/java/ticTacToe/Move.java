@@ -2,53 +2,104 @@ package ticTacToe;
 
 /**
  * A move in the Tic-Tac-Toe game. If the game is modelled as an MDP, a Move is essentially an MDP Action.
+ *
+ * There are only 18 different moves (X or O in one of 9 cells), so Moves are immutable and the same 18 instances
+ * can be shared everywhere: use {@link Move#of(char, int)} to get them instead of constructing new ones.
  * @author ae187
  *
  */
 public class Move {
-	
+
+	/**
+	 * can be either 'X', or 'O'
+	 */
+	public final char who;
+	public final int x;
+	public final int y;
+
+	/**
+	 * the cell index, 3*x+y, i.e. the numbering shown by {@link HumanAgent}
+	 */
+	public final int cell;
+
+	/**
+	 * compact encoding of the move: the cell, plus 9 if it is an O move. Also used as the hash code.
+	 */
+	private final int code;
+
 	/**
-	 * can be either 'X', or 'O' 
+	 * The 18 shared moves, indexed by {@link #code}
 	 */
-	public Agent who;
-	public int x;
-	public int y;
-	
+	private static final Move[] MOVES=new Move[18];
+
+	static {
+		for(int cell=0;cell<9;cell++)
+		{
+			MOVES[cell]=new Move('X', cell/3, cell%3);
+			MOVES[9+cell]=new Move('O', cell/3, cell%3);
+		}
+	}
+
 	public Move(char who, int x, int y)
 	{
 		if (who!='X' && who!='O')
 			throw new IllegalArgumentException("Can only be a move by X or by O");
-		
-		this.who=new Agent();
-		this.who.setName(who);
-		
+
+		this.who=who;
+
 		if (x<0 || x>2 || y<0 || y>2)
 			throw new IllegalArgumentException("Invalid x or y coordinates");
 		this.x=x;
 		this.y=y;
-		
+		this.cell=3*x+y;
+		this.code=(who=='X'?0:9)+cell;
+
 	}
-	
+
 	public Move(Agent who, int x, int y)
 	{
-		if (who.getName()!='X' && who.getName()!='O')
-			throw new IllegalArgumentException("Can only be a move by X or by O");
-		
-		this.who=who;
-		
-		if (x<0 || x>2 || y<0 || y>2)
-			throw new IllegalArgumentException("Invalid x or y coordinates");
-		this.x=x;
-		this.y=y;
-		
+		this(who.getName(), x, y);
+
 	}
-	
+
 	public Move(int x, int y)
 	{
 		this('X', x, y);
-	
+
 	}
-	
+
+	/**
+	 *
+	 * @param who 'X' or 'O'
+	 * @param cell the cell index, 3*x+y, between 0 and 8 inclusive
+	 * @return the shared move by {@code who} in {@code cell}
+	 */
+	public static Move of(char who, int cell)
+	{
+		if (who!='X' && who!='O')
+			throw new IllegalArgumentException("Can only be a move by X or by O");
+
+		if (cell<0 || cell>8)
+			throw new IllegalArgumentException("Invalid cell");
+
+		return MOVES[(who=='X'?0:9)+cell];
+	}
+
+	/**
+	 *
+	 * @param who 'X' or 'O'
+	 * @param x the x coordinate of the move (between 0 and 2 inclusive)
+	 * @param y the y coordinate of the move (between 0 and 2 inclusive)
+	 * @return the shared move by {@code who} at (x,y)
+	 */
+	public static Move of(char who, int x, int y)
+	{
+		if (x<0 || x>2 || y<0 || y>2)
+			throw new IllegalArgumentException("Invalid x or y coordinates");
+
+		return of(who, 3*x+y);
+	}
+
 	public String toString()
 	{
 		return who+"("+x+","+y+")";
@@ -56,37 +107,21 @@ public class Move {
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((who == null) ? 0 : who.getName());
-		result = prime * result + x;
-		result = prime * result + y;
-		return result;
+		return code;
 	}
 
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
-			return false;
-		Move other = (Move) obj;
-		if (this.who.getName()!=other.who.getName())
-			return false;
-		
-		if (x != other.x)
+		if (!(obj instanceof Move))
 			return false;
-		
-		if (y != other.y)
-			return false;
-		
-		return true;
+
+		return code==((Move) obj).code;
 	}
-	
-	
-	
-	
+
+
+
+
 
 }
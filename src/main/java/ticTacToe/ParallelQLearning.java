@@ -0,0 +1,306 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Q-Learning on several threads at once. Every thread plays its own
+ * {@link TTTEnvironment}, against its own opponent, and learns into its own
+ * shard: a private copy of the {@link QTable}, so the threads never share a
+ * q-value while they play. Every {@code mergeInterval} episodes the threads
+ * wait for each other, and the shards are merged into one table, which every
+ * shard then starts the next round from.
+ *
+ * The episodes are split between the threads before training starts, and each
+ * round a thread plays a fixed number of them, so how many episodes each thread
+ * plays, and when, doesn't depend on the scheduling of the threads. The
+ * exploration of each thread is seeded from {@link #setSeed(long)}.
+ *
+ * The learning itself is the same as in {@link QLearningAgent#train()}: see
+ * {@link QTable#learn}.
+ */
+public class ParallelQLearning {
+
+	/**
+	 * How the shards are combined when they are merged.
+	 */
+	public enum Merge {
+		/**
+		 * every q-value is the average of the shards' q-values
+		 */
+		AVERAGE,
+		/**
+		 * every q-value is the average of the shards' q-values, each weighted by the
+		 * number of times the shard updated it in the round. Q-values no shard
+		 * updated are left as they were.
+		 */
+		VISIT_WEIGHTED
+	}
+
+	/**
+	 * makes an opponent for each thread: opponents may have state, e.g. a
+	 * {@link java.util.Random}, so they are not shared
+	 */
+	final Supplier<Agent> opponents;
+
+	/**
+	 * the learning rate, the discount factor and the exploration rate, as in
+	 * {@link QLearningAgent}
+	 */
+	final double alpha;
+	final double discount;
+	final double epsilon;
+
+	/**
+	 * the number of threads, i.e. of shards
+	 */
+	final int threads;
+
+	/**
+	 * the number of episodes each thread plays between two merges
+	 */
+	int mergeInterval = 1000;
+
+	Merge merge = Merge.VISIT_WEIGHTED;
+
+	long seed = 0;
+
+	/**
+	 * the merged q-values
+	 */
+	final QTable qTable;
+
+	/**
+	 * the number of episodes each thread played, and the number of merges, in the
+	 * last {@link #train}
+	 */
+	int[] episodesPerThread = new int[0];
+	int rounds;
+
+	/**
+	 *
+	 * @param opponents makes the opponent of each thread's environment
+	 * @param alpha     the learning rate
+	 * @param discount
+	 * @param epsilon   the probability of exploring
+	 * @param threads   the number of threads to train on
+	 */
+	public ParallelQLearning(Supplier<Agent> opponents, double alpha, double discount, double epsilon, int threads) {
+		this(new QTable(), opponents, alpha, discount, epsilon, threads);
+	}
+
+	/**
+	 *
+	 * @param qTable    the q-values to learn into: every shard starts from them
+	 * @param opponents makes the opponent of each thread's environment
+	 * @param alpha     the learning rate
+	 * @param discount
+	 * @param epsilon   the probability of exploring
+	 * @param threads   the number of threads to train on
+	 */
+	public ParallelQLearning(QTable qTable, Supplier<Agent> opponents, double alpha, double discount, double epsilon,
+			int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		if (opponents == null)
+			throw new IllegalArgumentException("The threads need an opponent supplier");
+		this.qTable = qTable;
+		this.opponents = opponents;
+		this.alpha = alpha;
+		this.discount = discount;
+		this.epsilon = epsilon;
+		this.threads = threads;
+	}
+
+	/**
+	 *
+	 * @param episodes the number of episodes each thread plays between two merges
+	 */
+	public void setMergeInterval(int episodes) {
+		if (episodes < 1)
+			throw new IllegalArgumentException("The merge interval must be at least one episode");
+		this.mergeInterval = episodes;
+	}
+
+	/**
+	 *
+	 * @param merge how to combine the shards
+	 */
+	public void setMerge(Merge merge) {
+		this.merge = merge;
+	}
+
+	/**
+	 *
+	 * @param seed the seed of the exploration: thread {@code i} explores with
+	 *             {@code new Random(seed + i)}
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays {@code numEpisodes} episodes in total, split as evenly as possible
+	 * between the threads, learning into the merged table.
+	 *
+	 * @param numEpisodes
+	 * @return the merged q-values
+	 */
+	public QTable train(int numEpisodes) {
+		episodesPerThread = new int[threads];
+		for (int i = 0; i < threads; i++)
+			episodesPerThread[i] = numEpisodes / threads + ((i < numEpisodes % threads) ? 1 : 0);
+
+		List<Shard> shards = new ArrayList<Shard>(threads);
+		for (int i = 0; i < threads; i++)
+			shards.add(new Shard(new Random(seed + i)));
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			rounds = 0;
+			for (int played = 0; played < episodesPerThread[0]; played += mergeInterval) {
+				for (int i = 0; i < threads; i++)
+					shards.get(i).episodes = Math.max(0, Math.min(mergeInterval, episodesPerThread[i] - played));
+
+				for (Future<Void> round : pool.invokeAll(shards))
+					round.get();
+				merge(shards);
+				rounds++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Training was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Training failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return qTable;
+	}
+
+	/**
+	 * Combines the shards into {@link #qTable}, and restarts every shard from the
+	 * result.
+	 */
+	private void merge(List<Shard> shards) {
+		QTable[] tables = new QTable[shards.size()];
+		int[][] visits = new int[shards.size()][];
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = shards.get(i).table;
+			visits[i] = shards.get(i).visits;
+		}
+		merge(merge, tables, visits, qTable);
+
+		for (Shard shard : shards) {
+			shard.table.copyFrom(qTable);
+			Arrays.fill(shard.visits, 0);
+		}
+	}
+
+	/**
+	 * Combines q-tables over the same states into {@code merged}.
+	 *
+	 * @param merge  how to combine them
+	 * @param tables the q-tables
+	 * @param visits {@code visits[k][9*s+a]} is the number of times
+	 *               {@code tables[k]} updated the q-value of {@code (s, a)}
+	 * @param merged receives the result
+	 */
+	static void merge(Merge merge, QTable[] tables, int[][] visits, QTable merged) {
+		double[] values = merged.values;
+		for (int i = 0; i < values.length; i++) {
+			double sum = 0;
+			int weights = 0;
+			for (int k = 0; k < tables.length; k++) {
+				int weight = (merge == Merge.AVERAGE) ? 1 : visits[k][i];
+				sum += weight * tables[k].values[i];
+				weights += weight;
+			}
+			if (weights > 0)
+				values[i] = sum / weights;
+		}
+		merged.rescanAll();
+	}
+
+	/**
+	 *
+	 * @return the merged q-values
+	 */
+	public QTable getQTable() {
+		return qTable;
+	}
+
+	/**
+	 *
+	 * @return the greedy policy of the merged q-values
+	 */
+	public Policy extractPolicy() {
+		return qTable.greedyPolicy();
+	}
+
+	/**
+	 *
+	 * @return the number of episodes played by each thread in the last
+	 *         {@link #train}
+	 */
+	public int[] getEpisodesPerThread() {
+		return episodesPerThread.clone();
+	}
+
+	/**
+	 *
+	 * @return the number of merges in the last {@link #train}
+	 */
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * One thread's environment and q-values. Each call plays {@link #episodes}
+	 * episodes.
+	 */
+	private class Shard implements Callable<Void> {
+
+		final TTTEnvironment env = new TTTEnvironment(opponents.get());
+
+		final QTable table = new QTable(qTable.getStates());
+
+		/**
+		 * (state id, cell) -> the number of updates of the q-value in this round
+		 */
+		final int[] visits = new int[table.values.length];
+
+		final EpsilonGreedyPolicy behaviour;
+
+		int episodes;
+
+		Shard(Random random) {
+			this.table.copyFrom(qTable);
+			this.behaviour = new EpsilonGreedyPolicy(table, epsilon, random);
+		}
+
+		@Override
+		public Void call() throws IllegalMoveException {
+			for (int e = 0; e < episodes; e++) {
+				while (!env.isTerminal()) {
+					Outcome result = env.executeMove(behaviour.getMove(env.getCurrentGameState()));
+					int s = table.indexOf(result.s);
+					int a = QTable.actionOf(result.s, result.move);
+					table.learn(s, a, result.localReward, table.indexOf(result.sPrime), alpha, discount);
+					visits[9 * s + a]++;
+				}
+				env.reset();
+			}
+			return null;
+		}
+	}
+
+}
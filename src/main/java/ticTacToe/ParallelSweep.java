@@ -0,0 +1,171 @@
+package ticTacToe;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * One synchronous (Jacobi) value iteration sweep over a {@link CompiledMDP},
+ * split across a {@link ForkJoinPool}. Every backup reads the values of the
+ * previous sweep from one buffer and writes into another, so the states can be
+ * updated in any order and on any thread.
+ *
+ * The states are cut into fixed size blocks that don't depend on the number of
+ * threads, and the residual is reduced block by block in id order, so the
+ * results are the same whatever the parallelism.
+ *
+ * Only the model's arrays are used, so the same sweep works for any model
+ * compiled into the CSR form.
+ *
+ * As a by-product of the backups, the best move of every state is recorded, and
+ * optionally every q-value.
+ */
+class ParallelSweep {
+
+	/**
+	 * number of states backed up by one task
+	 */
+	static final int BLOCK = 64;
+
+	final CompiledMDP model;
+	final double discount;
+	final ForkJoinPool pool;
+
+	/**
+	 * state id -> cell of the best move found by the last sweep, -1 for terminal
+	 * states
+	 */
+	final byte[] policy;
+
+	/**
+	 * action id -> q-value computed by the last sweep, or null if not wanted
+	 */
+	final double[] q;
+
+	/**
+	 * per block: the largest value change and the number of values changed in the
+	 * last sweep
+	 */
+	private final double[] blockResidual;
+	private final int[] blockUpdated;
+	private final int[] blockChanges;
+
+	/**
+	 * the number of values, and of best moves, changed in the last sweep. Finding
+	 * the first best move of a state doesn't count as a change.
+	 */
+	int statesUpdated;
+	int policyChanges;
+
+	/**
+	 *
+	 * @param model
+	 * @param discount
+	 * @param pool     the pool to run the backups in
+	 * @param policy   receives the best move of every state, indexed by state id
+	 * @param q        receives the q-values, indexed by action id. May be null.
+	 */
+	ParallelSweep(CompiledMDP model, double discount, ForkJoinPool pool, byte[] policy, double[] q) {
+		this.model = model;
+		this.discount = discount;
+		this.pool = pool;
+		this.policy = policy;
+		this.q = q;
+		int blocks = (model.numStates() + BLOCK - 1) / BLOCK;
+		this.blockResidual = new double[blocks];
+		this.blockUpdated = new int[blocks];
+		this.blockChanges = new int[blocks];
+	}
+
+	/**
+	 * Backs up every state once.
+	 *
+	 * @param in  the values of the previous sweep, read only
+	 * @param out receives the new values
+	 * @return the Bellman residual: the largest change of a value
+	 */
+	double sweep(double[] in, double[] out) {
+		if (blockResidual.length > 0)
+			pool.invoke(new Blocks(in, out, 0, blockResidual.length));
+
+		double residual = 0;
+		statesUpdated = 0;
+		policyChanges = 0;
+		for (int b = 0; b < blockResidual.length; b++) {
+			residual = Math.max(residual, blockResidual[b]);
+			statesUpdated += blockUpdated[b];
+			policyChanges += blockChanges[b];
+		}
+		return residual;
+	}
+
+	/**
+	 * Backs up the states of one block, sequentially.
+	 */
+	private void backup(double[] in, double[] out, int b) {
+		int[] actionStart = model.actionStart;
+		int end = Math.min((b + 1) * BLOCK, model.numStates());
+		double residual = 0;
+		int updated = 0;
+		int changes = 0;
+		for (int s = b * BLOCK; s < end; s++) {
+			double v = 0; // terminal states are worth 0
+			int best = -1;
+			for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+				double qa = model.qValue(a, in, discount);
+				if (q != null)
+					q[a] = qa;
+				if (best < 0 || qa > v) {
+					v = qa;
+					best = a;
+				}
+			}
+			byte cell = (best < 0) ? -1 : model.actionCell[best];
+			if (policy[s] != cell) {
+				if (policy[s] >= 0) // a state's first best move is not a change
+					changes++;
+				policy[s] = cell;
+			}
+			double change = Math.abs(v - in[s]);
+			if (change > 0)
+				updated++;
+			if (change > residual)
+				residual = change;
+			out[s] = v;
+		}
+		blockResidual[b] = residual;
+		blockUpdated[b] = updated;
+		blockChanges[b] = changes;
+	}
+
+	/**
+	 * Backs up blocks {@code from} to {@code to-1}, splitting in halves down to
+	 * single blocks.
+	 */
+	private class Blocks extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final double[] in;
+		final double[] out;
+		final int from;
+		final int to;
+
+		Blocks(double[] in, double[] out, int from, int to) {
+			this.in = in;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				backup(in, out, from);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Blocks(in, out, from, mid), new Blocks(in, out, mid, to));
+		}
+	}
+
+}
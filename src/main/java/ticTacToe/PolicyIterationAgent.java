@@ -1,7 +1,7 @@
 package ticTacToe;
 
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
@@ -27,15 +27,22 @@ import java.util.Random;
 public class PolicyIterationAgent extends Agent {
 
 	/**
-	 * This map is used to store the values of states according to the current
-	 * policy (policy evaluation).
+	 * The states the agent plans over: all valid games where it is X's turn, or
+	 * it's terminal. Symmetric games share one state, see {@link Game#canonical()}.
 	 */
-	HashMap<Game, Double> policyValues = new HashMap<Game, Double>();
+	StateIndex states;
 
 	/**
-	 * This stores the current policy as a map from {@link Game}s to {@link Move}.
+	 * This array is used to store the values of states according to the current
+	 * policy (policy evaluation), indexed by their id in {@link #states}.
 	 */
-	HashMap<Game, Move> curPolicy = new HashMap<Game, Move>();
+	double[] policyValues;
+
+	/**
+	 * This stores the current policy as the cell to play in each state, indexed by
+	 * state id. -1 for terminal states.
+	 */
+	byte[] curPolicy;
 
 	double discount = 0.9;
 
@@ -44,6 +51,12 @@ public class PolicyIterationAgent extends Agent {
 	 */
 	TTTMDP mdp;
 
+	/**
+	 * {@link #mdp} compiled over {@link #states}, see {@link TTTMDP#compile()}.
+	 * Built by {@link #train()}.
+	 */
+	CompiledMDP model;
+
 	/**
 	 * loads the policy from file if one exists. Policies should be stored in .pol
 	 * files directly under the project folder.
@@ -101,16 +114,18 @@ public class PolicyIterationAgent extends Agent {
 	}
 
 	/**
-	 * Initialises the {@link #policyValues} map, and sets the initial value of all
-	 * states to 0 (V0 under some policy pi ({@link #curPolicy} from the lectures).
-	 * Uses {@link Game#inverseHash} and {@link Game#generateAllValidGames(char)} to
-	 * do this.
+	 * Initialises the {@link #policyValues} array, and sets the initial value of
+	 * all states to 0 (V0 under some policy pi ({@link #curPolicy} from the
+	 * lectures). Uses the shared canonical {@link StateIndex} of X's states, built from
+	 * {@link Game#generateAllValidGames(char)}, to do this.
 	 * 
 	 */
 	public void initValues() {
-		List<Game> allGames = Game.generateAllValidGames('X');// all valid games where it is X's turn, or it's terminal.
-		for (Game g : allGames)
-			this.policyValues.put(g, 0.0);
+		// all valid games where it is X's turn, or it's terminal; one per symmetry orbit.
+		this.states = StateIndex.of('X', true);
+		this.policyValues = new double[states.size()];
+		this.curPolicy = new byte[states.size()];
+		Arrays.fill(curPolicy, (byte) -1);
 
 	}
 
@@ -126,13 +141,14 @@ public class PolicyIterationAgent extends Agent {
 		// Maintains a list of all the possible moves from a state
 		List<Move> possibleMoves;
 		// If statement to iterate over all the possible game states in a given policy
-		for (Game game : this.policyValues.keySet()) {
+		for (int s = 0; s < states.size(); s++) {
+			Game game = states.getGame(s);
 			if (game.isTerminal()) { // Skip if its a terminal state as they do not require a policy
 				continue;
 			}
 			possibleMoves = game.getPossibleMoves(); // store the list of all possible moves for the current game state
 			// Randomize the selection of a move and assign it to the policy.
-			this.curPolicy.put(game, possibleMoves.get(rand.nextInt(possibleMoves.size())));
+			this.curPolicy[s] = (byte) possibleMoves.get(rand.nextInt(possibleMoves.size())).cell;
 		}
 	}
 
@@ -147,53 +163,60 @@ public class PolicyIterationAgent extends Agent {
 	 * @param delta
 	 */
 	protected void evaluatePolicy(double delta) {
-		// Iterate over all the game states that are in the policyValues Hashmap.
-		for (Game game : this.policyValues.keySet()) {
+		// Iterate over all the game states that are in the policyValues array.
+		for (int s = 0; s < states.size(); s++) {
 			// Skip any terminal states
-			if (game.isTerminal()) {
-				this.policyValues.put(game, 0.0); // Set terminal states value to 0
+			if (model.isTerminal(s)) {
+				this.policyValues[s] = 0.0; // Set terminal states value to 0
 				continue;
 			}
+			// the action the current policy takes in this state
+			int a = model.actionOf(s, this.curPolicy[s]);
 			// variables to store the updated and old values for the current game state.
 			double updatedValue; // updated value during each iteration
 			double oldValue; // (old) value of the current game state
 
 			// The following loop will run till the values start to converge
 			do {
-				updatedValue = 0;
-				// Iterates over all possible transitions for the current game state and policy.
-				for (TransitionProb tProbability : this.mdp.generateTransitions(game, this.curPolicy.get(game))) {
-					// Applying Bellmans equation to calculate q-value
-					// probability of transitioning from the current state to the next state given
-					// the current action.
-					double transitionProbability = tProbability.prob;
-					// immediate reward received after taking the current action in the current
-					// state
-					double immediateReward = tProbability.outcome.localReward;
-					// The discount factor (gamma)
-					double discountFactor = discount;
-					// estimated value of the next state V(sPrime)
-					double estimatedValueofNextState = this.policyValues.get(tProbability.outcome.sPrime);
-					// Equation
-					double qValue = transitionProbability
-							* (immediateReward + (discountFactor * estimatedValueofNextState));
-					// Updating the equation
-					updatedValue += qValue;
-
-				}
+				// Applying Bellmans equation: the expected immediate reward plus discounted
+				// value of the next state, over all possible transitions for the current
+				// action.
+				updatedValue = model.qValue(a, this.policyValues, discount);
 				// Stores previous value before the update
-				oldValue = this.policyValues.get(game);
-				this.policyValues.put(game, updatedValue);
+				oldValue = this.policyValues[s];
+				this.policyValues[s] = updatedValue;
 
 				// If the change in the value of the current state is larger than the defined
 				// threshold delta. The condition returns false when the values converge and
 				// stops the loop.
-			} while (Math.abs(this.policyValues.get(game) - oldValue) > delta);
+			} while (Math.abs(this.policyValues[s] - oldValue) > delta);
 
 		}
 
 	}
 
+	/**
+	 * Evaluates the current policy exactly, in one pass. The game can't go back to
+	 * an earlier position, so with the states ordered by ply, every successor of a
+	 * state has a higher id: going through the ids backwards, the value of each
+	 * state under the policy is computed from values that are already final (see
+	 * {@link RetrogradeSolver#evaluate}).
+	 */
+	protected void evaluatePolicyExactly() {
+		RetrogradeSolver.evaluate(model, discount, curPolicy, policyValues);
+	}
+
+	/**
+	 * Evaluates the current policy, exactly or iteratively depending on
+	 * {@link #exactEvaluation}.
+	 */
+	private void evaluate() {
+		if (exactEvaluation)
+			this.evaluatePolicyExactly();
+		else
+			this.evaluatePolicy(delta);
+	}
+
 	/**
 	 * This method should be run AFTER the
 	 * {@link PolicyIterationAgent#evaluatePolicy} train method to improve the
@@ -206,46 +229,36 @@ public class PolicyIterationAgent extends Agent {
 	 *         improvement, i.e. the policy already returned the optimal actions.
 	 */
 	protected boolean improvePolicy() {
-		// creates a copy of the existing current policy. This will be used to compare
-		// later.
-		Policy duplicatePolicy = new Policy(new HashMap<>(this.curPolicy));
+		// counts the states whose move changes in this round. If none do, the policy
+		// is stable.
+		int changedActions = 0;
 		// Apply the expectimax algorithm
-		for (Game game : this.curPolicy.keySet()) {
+		for (int s = 0; s < states.size(); s++) {
+			if (this.curPolicy[s] < 0) // no move to improve in terminal states
+				continue;
 			//// Gets the current value of the state from policyValues and stores it in
 			//// currentMaxValue
-			double currentMaxValue = this.policyValues.get(game);
-			// Store the current best move in the instance of type Move.
-			Move bestMove = this.curPolicy.get(game);
+			double currentMaxValue = this.policyValues[s];
+			// Store the current best move's cell.
+			byte bestCell = this.curPolicy[s];
 			// Iterate through all possible moves for the current state
-			for (Move possibleMove : game.getPossibleMoves()) {
-				double sum = 0;
-				// Iterate through all possible outcomes for the current move
-				for (TransitionProb t : this.mdp.generateTransitions(game, possibleMove)) {
-					// calculate the discounted future value by multiplying the future state's value
-					// with the discount factor
-					double discountedFutureValue = discount * this.policyValues.get(t.outcome.sPrime);
-					// calculate the total expected value of the transition by adding the
-					// reward to the discounted future value
-					double totalExpectedValue = t.outcome.localReward + discountedFutureValue;
-					// calculate the q-value for the transition
-					double qValue = t.prob * totalExpectedValue;
-					sum += qValue;
-				}
+			for (int a = model.actionStart[s]; a < model.actionStart[s + 1]; a++) {
+				// the expected reward plus discounted future value, over all possible
+				// outcomes for the current move
+				double sum = model.qValue(a, this.policyValues, discount);
 				if (sum > currentMaxValue) {
 					currentMaxValue = sum;
-					bestMove = possibleMove; // Update the best move
+					bestCell = model.actionCell[a]; // Update the best move
 				}
 			}
 			// Update the policy with the best move for the current state
-			this.curPolicy.put(game, bestMove);
-		}
-		// Compare the current policy with the copy of the last policy,
-		// if no change, improvePolicy returns false, else true.
-		if (this.curPolicy.equals(duplicatePolicy.policy)) {
-			return false;
-		} else {
-			return true;
+			if (this.curPolicy[s] != bestCell)
+				changedActions++;
+			this.curPolicy[s] = bestCell;
 		}
+		this.policyChanges += changedActions;
+		// if no move changed, improvePolicy returns false, else true.
+		return changedActions > 0;
 	}
 
 	/**
@@ -253,6 +266,70 @@ public class PolicyIterationAgent extends Agent {
 	 */
 	double delta = 0.1;
 
+	/**
+	 * If true, {@link #train()} solves the MDP exactly with the
+	 * {@link RetrogradeSolver} instead of alternating evaluation and improvement.
+	 */
+	boolean retrograde = false;
+
+	/**
+	 * If true (the default), policies are evaluated exactly with
+	 * {@link #evaluatePolicyExactly()}; otherwise iteratively with
+	 * {@link #evaluatePolicy(double)} and {@link #delta}.
+	 */
+	boolean exactEvaluation = true;
+
+	/**
+	 * If more than 0, {@link #train()} runs modified policy iteration: each round
+	 * does this many evaluation sweeps instead of a full evaluation, see
+	 * {@link #setModifiedPolicyIteration(int)}.
+	 */
+	int evaluationSweeps = 0;
+
+	/**
+	 * the number of rounds of policy improvement, and of moves changed by them,
+	 * in the last {@link #train()} or {@link #replan(MDPConfig)}
+	 */
+	int rounds;
+	int policyChanges;
+
+	/**
+	 * Chooses the engine used by {@link #train()}: policy iteration (the
+	 * default), or a single backwards pass of the {@link RetrogradeSolver}, which
+	 * gives the optimal policy and its exact values.
+	 * 
+	 * @param retrograde
+	 */
+	public void setRetrograde(boolean retrograde) {
+		this.retrograde = retrograde;
+	}
+
+	/**
+	 * Chooses how policies are evaluated: exactly, by back-substitution (the
+	 * default), or iteratively until no value changes by more than {@link #delta}.
+	 * 
+	 * @param exact
+	 */
+	public void setExactEvaluation(boolean exact) {
+		this.exactEvaluation = exact;
+	}
+
+	/**
+	 * Switches to modified policy iteration: each round improves the policy, then
+	 * only does {@code sweeps} evaluation sweeps over the states instead of
+	 * evaluating it fully. Improvement only looks at the states whose successors
+	 * changed value since they were last looked at (the dirty states), and
+	 * training stops when a round changes no move and no value. 0 switches back to
+	 * standard policy iteration.
+	 * 
+	 * @param sweeps the number of evaluation sweeps per round, 0 or more
+	 */
+	public void setModifiedPolicyIteration(int sweeps) {
+		if (sweeps < 0)
+			throw new IllegalArgumentException("The number of sweeps can't be negative");
+		this.evaluationSweeps = sweeps;
+	}
+
 	/**
 	 * This method should perform policy evaluation and policy improvement steps
 	 * until convergence (i.e. until the policy no longer changes), and so uses your
@@ -260,17 +337,189 @@ public class PolicyIterationAgent extends Agent {
 	 * {@link PolicyIterationAgent#improvePolicy} methods.
 	 */
 	public void train() {
-		// Initialize the policy with a random policy
-		this.initRandomPolicy();
-		// run following while loop as long as there is policy change
-		while (this.improvePolicy()) {
-			// Evaluate the current policy to update the values of states
-			this.evaluatePolicy(delta);
+		// compile the transitions once; evaluation and improvement then only read arrays
+		this.model = mdp.compile(states);
+		if (retrograde) {
+			solveRetrograde();
+		} else {
+			// Initialize the policy with a random policy, and evaluate it: the values
+			// left by an earlier training are those of another policy, and improving
+			// against them would keep the random moves
+			this.initRandomPolicy();
+			Arrays.fill(this.policyValues, 0);
+			this.evaluate();
+			runPolicyIteration();
 		}
 		// Once the loop concludes (until the policy no longer changes), create a new
 		// Policy
 		// using the current policy and assign it to the superclass's policy field
-		super.policy = new Policy(curPolicy);
+		super.policy = new IndexedPolicy(states, curPolicy.clone());
+	}
+
+	/**
+	 * Alternates policy improvement and evaluation, starting from
+	 * {@link #curPolicy} and {@link #policyValues}, until the policy no longer
+	 * changes.
+	 */
+	private void runPolicyIteration() {
+		if (evaluationSweeps > 0) {
+			runModifiedPolicyIteration();
+			return;
+		}
+		this.rounds = 1;
+		this.policyChanges = 0;
+		// run following while loop as long as there is policy change
+		while (this.improvePolicy()) {
+			// Evaluate the current policy to update the values of states
+			this.evaluate();
+			this.rounds++;
+		}
+	}
+
+	/**
+	 * Modified policy iteration, starting from {@link #curPolicy} and
+	 * {@link #policyValues}. Each round:
+	 * <ol>
+	 * <li>improves the policy in the dirty states only: a state's move is replaced
+	 * if another move has a strictly higher q-value. At the start every state is
+	 * dirty.</li>
+	 * <li>does {@link #evaluationSweeps} sweeps of {@code V(s) = Q(s, pi(s))} over
+	 * the states. The predecessors of every state whose value changes become
+	 * dirty.</li>
+	 * </ol>
+	 * A state that isn't dirty had no successor change value since it was last
+	 * improved, so its move is still greedy. When a round changes no move and
+	 * leaves no state dirty, the values are those of the policy and the policy is
+	 * greedy in every state: it is optimal.
+	 */
+	private void runModifiedPolicyIteration() {
+		int n = states.size();
+		PredecessorIndex predecessors = new PredecessorIndex(model);
+
+		// the dirty states: a flag per state, and a stack of the flagged ones
+		boolean[] isDirty = new boolean[n];
+		int[] dirty = new int[n];
+		int numDirty = 0;
+		for (int s = 0; s < n; s++)
+			if (!model.isTerminal(s)) {
+				isDirty[s] = true;
+				dirty[numDirty++] = s;
+			}
+
+		// the action id of the current move of every state
+		int[] action = new int[n];
+		for (int s = 0; s < n; s++)
+			action[s] = model.isTerminal(s) ? -1 : model.actionOf(s, curPolicy[s]);
+
+		this.rounds = 0;
+		this.policyChanges = 0;
+		int changedActions;
+		do {
+			this.rounds++;
+
+			// improvement, on the dirty states only
+			changedActions = 0;
+			while (numDirty > 0) {
+				int s = dirty[--numDirty];
+				isDirty[s] = false;
+				double bestValue = model.qValue(action[s], policyValues, discount);
+				for (int a = model.actionStart[s]; a < model.actionStart[s + 1]; a++) {
+					double q = model.qValue(a, policyValues, discount);
+					if (q > bestValue) {
+						bestValue = q;
+						action[s] = a;
+					}
+				}
+				byte cell = model.actionCell[action[s]];
+				if (curPolicy[s] != cell) {
+					curPolicy[s] = cell;
+					changedActions++;
+				}
+			}
+			this.policyChanges += changedActions;
+
+			// partial evaluation, marking the predecessors of changed values dirty
+			for (int i = 0; i < evaluationSweeps; i++)
+				for (int s = 0; s < n; s++) {
+					double v = (action[s] < 0) ? 0 : model.qValue(action[s], policyValues, discount);
+					if (v == policyValues[s])
+						continue;
+					policyValues[s] = v;
+					for (int j = predecessors.start[s]; j < predecessors.start[s + 1]; j++) {
+						int p = predecessors.pred[j];
+						if (!isDirty[p]) {
+							isDirty[p] = true;
+							dirty[numDirty++] = p;
+						}
+					}
+				}
+		} while (changedActions > 0 || numDirty > 0);
+	}
+
+	/**
+	 * Solves {@link #model} with the {@link RetrogradeSolver}: one exact backup per
+	 * state, from full boards back to the empty board.
+	 */
+	private void solveRetrograde() {
+		RetrogradeSolver.Solution solution = RetrogradeSolver.solve(model, discount);
+		this.policyChanges = 0;
+		for (int s = 0; s < states.size(); s++)
+			if (curPolicy[s] >= 0 && solution.policy[s] != curPolicy[s])
+				policyChanges++;
+		this.rounds = 1;
+		this.policyValues = solution.values;
+		this.curPolicy = solution.policy;
+	}
+
+	/**
+	 * An untrained agent for {@code params}, with the engine and evaluation
+	 * settings of {@code settings}.
+	 */
+	private PolicyIterationAgent(PolicyIterationAgent settings, MDPConfig params) {
+		this.discount = params.discount;
+		this.mdp = params.toMDP();
+		this.delta = settings.delta;
+		this.retrograde = settings.retrograde;
+		this.exactEvaluation = settings.exactEvaluation;
+		this.evaluationSweeps = settings.evaluationSweeps;
+		initValues();
+	}
+
+	/**
+	 * Changes the discount and rewards, and plans again for them, warm started:
+	 * the compiled model is reused with the new rewards, and policy iteration
+	 * starts from the current policy and its values instead of from a random
+	 * policy. Small changes to the parameters then need fewer rounds and policy
+	 * changes than training from scratch.
+	 * 
+	 * To measure the saving, the new parameters are also solved from scratch, from
+	 * a random policy as in {@link #train()}, by a separate agent with the same
+	 * engine.
+	 * 
+	 * @param params the new discount and rewards
+	 * @return the work of the replan, next to that of the solve from scratch
+	 * @throws IllegalStateException if the agent hasn't been trained yet
+	 */
+	public ReplanReport replan(MDPConfig params) {
+		if (model == null)
+			throw new IllegalStateException("The agent must be trained before it can replan");
+
+		PolicyIterationAgent cold = new PolicyIterationAgent(this, params);
+		cold.train();
+
+		this.discount = params.discount;
+		this.mdp = params.toMDP();
+		this.model = model.withRewards(mdp);
+
+		if (retrograde) {
+			solveRetrograde();
+		} else {
+			// the values are those of the current policy under the old parameters
+			this.evaluate();
+			runPolicyIteration();
+		}
+		super.policy = new IndexedPolicy(states, curPolicy.clone());
+		return new ReplanReport(cold.rounds, rounds, cold.policyChanges, policyChanges);
 	}
 
 	public static void main(String[] args) throws IllegalMoveException {
@@ -0,0 +1,68 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * The reverse of the transitions of a {@link CompiledMDP}: for every state, the
+ * states with at least one move that can lead to it. When the value of a state
+ * changes, these are the only states whose best move or Bellman error can
+ * change.
+ *
+ * Stored in compressed sparse row form: the predecessors of state {@code s}
+ * are {@code pred[start[s]]} to {@code pred[start[s+1]-1]}, each listed once,
+ * in increasing id order.
+ */
+class PredecessorIndex {
+
+	final int[] start;
+	final int[] pred;
+
+	/**
+	 * Builds the predecessor index of {@code model}.
+	 *
+	 * @param model
+	 */
+	PredecessorIndex(CompiledMDP model) {
+		int n = model.numStates();
+
+		// last[s] is the last predecessor added for s, so that a state reaching s by
+		// several moves or replies is only listed once.
+		int[] last = new int[n];
+		Arrays.fill(last, -1);
+
+		this.start = new int[n + 1];
+		for (int p = 0; p < n; p++)
+			for (int t = firstTransition(model, p); t < firstTransition(model, p + 1); t++) {
+				int s = model.next[t];
+				if (last[s] != p) {
+					last[s] = p;
+					start[s + 1]++;
+				}
+			}
+		for (int s = 0; s < n; s++)
+			start[s + 1] += start[s];
+
+		this.pred = new int[start[n]];
+		int[] fill = new int[n];
+		System.arraycopy(start, 0, fill, 0, n);
+		Arrays.fill(last, -1);
+		for (int p = 0; p < n; p++)
+			for (int t = firstTransition(model, p); t < firstTransition(model, p + 1); t++) {
+				int s = model.next[t];
+				if (last[s] != p) {
+					last[s] = p;
+					pred[fill[s]++] = p;
+				}
+			}
+	}
+
+	/**
+	 *
+	 * @return the id of the first transition of state {@code s}'s first action;
+	 *         the transitions of all of {@code s}'s actions follow it
+	 */
+	private static int firstTransition(CompiledMDP model, int s) {
+		return model.transitionStart[model.actionStart[s]];
+	}
+
+}
@@ -0,0 +1,167 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * Prioritized sweeping over a {@link CompiledMDP}: instead of backing up every
+ * state in every sweep, states are backed up one at a time, largest Bellman
+ * error first. When a state's value changes, only the states with a move that
+ * can lead to it get their error recomputed, and they are queued if it is
+ * larger than a threshold. States whose successors didn't change are never
+ * backed up again.
+ *
+ * Every time a state's error is computed its best move is recorded, and
+ * optionally its q-values, so they are up to date with the values when the run
+ * ends.
+ *
+ * The predecessor index is built once, when the object is created, and is
+ * reused by every {@link #run}.
+ */
+public class PrioritizedSweeping {
+
+	final CompiledMDP model;
+
+	/**
+	 * the states with a move that can lead to each state
+	 */
+	final PredecessorIndex predecessors;
+
+	/**
+	 * the number of backups done, the number of them that changed a value, the
+	 * number of changes of a best move (from one move to another), and the largest
+	 * Bellman error left, by the last {@link #run}
+	 */
+	int backups;
+	int statesUpdated;
+	int policyChanges;
+	double residual;
+
+	/**
+	 * Builds the predecessor index of {@code model}.
+	 *
+	 * @param model
+	 */
+	public PrioritizedSweeping(CompiledMDP model) {
+		this.model = model;
+		this.predecessors = new PredecessorIndex(model);
+	}
+
+	/**
+	 * Updates {@code values} in place until no state's Bellman error is larger
+	 * than {@code theta}, or {@code maxBackups} backups have been done.
+	 *
+	 * @param values     state values, indexed by state id: the starting point, and
+	 *                   the result
+	 * @param discount
+	 * @param theta      states are only backed up if their Bellman error is larger
+	 *                   than this
+	 * @param maxBackups
+	 * @return the number of backups done
+	 */
+	public int run(double[] values, double discount, double theta, int maxBackups) {
+		byte[] policy = new byte[model.numStates()];
+		Arrays.fill(policy, (byte) -1);
+		return run(values, policy, null, discount, theta, maxBackups);
+	}
+
+	/**
+	 * Like {@link #run(double[], double, double, int)}, also giving the best move
+	 * of every state and, optionally, the q-values for the final values.
+	 *
+	 * @param values     state values, indexed by state id: the starting point, and
+	 *                   the result
+	 * @param policy     receives the cell of the best move of every state, indexed
+	 *                   by state id; -1 for terminal states
+	 * @param q          receives the q-values, indexed by action id. May be null.
+	 * @param discount
+	 * @param theta      states are only backed up if their Bellman error is larger
+	 *                   than this
+	 * @param maxBackups
+	 * @return the number of backups done
+	 */
+	public int run(double[] values, byte[] policy, double[] q, double discount, double theta, int maxBackups) {
+		int n = model.numStates();
+		policyChanges = 0;
+		double[] error = new double[n];
+		IndexedHeap queue = new IndexedHeap(n);
+
+		for (int s = 0; s < n; s++) {
+			error[s] = Math.abs(bellman(s, values, policy, q, discount) - values[s]);
+			if (error[s] > theta)
+				queue.offer(s, error[s]);
+		}
+
+		backups = 0;
+		statesUpdated = 0;
+		while (!queue.isEmpty() && backups < maxBackups) {
+			int s = queue.poll();
+			// the successors may have changed since s was queued
+			double v = bellman(s, values, policy, q, discount);
+			backups++;
+			double change = Math.abs(v - values[s]);
+			values[s] = v;
+			error[s] = 0;
+			if (change == 0)
+				continue;
+			statesUpdated++;
+
+			for (int i = predecessors.start[s]; i < predecessors.start[s + 1]; i++) {
+				int p = predecessors.pred[i];
+				error[p] = Math.abs(bellman(p, values, policy, q, discount) - values[p]);
+				if (error[p] > theta)
+					queue.offer(p, error[p]);
+			}
+		}
+
+		residual = 0;
+		for (int s = 0; s < n; s++)
+			residual = Math.max(residual, error[s]);
+		return backups;
+	}
+
+	/**
+	 * Records the best move of {@code s} in {@code policy}, and its q-values in
+	 * {@code q} if not null.
+	 *
+	 * @return the value of {@code s} after a Bellman backup: the best q-value, or
+	 *         0 for a terminal state
+	 */
+	private double bellman(int s, double[] values, byte[] policy, double[] q, double discount) {
+		int[] actionStart = model.actionStart;
+		double max = 0;
+		int best = -1;
+		for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+			double qa = model.qValue(a, values, discount);
+			if (q != null)
+				q[a] = qa;
+			if (best < 0 || qa > max) {
+				max = qa;
+				best = a;
+			}
+		}
+		byte cell = (best < 0) ? -1 : model.actionCell[best];
+		if (policy[s] != cell) {
+			if (policy[s] >= 0) // a state's first best move is not a change
+				policyChanges++;
+			policy[s] = cell;
+		}
+		return max;
+	}
+
+	/**
+	 *
+	 * @return the number of backups done by the last {@link #run}
+	 */
+	public int getBackups() {
+		return backups;
+	}
+
+	/**
+	 *
+	 * @return the largest Bellman error left after the last {@link #run}
+	 */
+	public double getResidual() {
+		return residual;
+	}
+
+}
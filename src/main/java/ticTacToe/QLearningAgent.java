@@ -1,7 +1,7 @@
 package ticTacToe;
 
-import java.util.List;
 import java.util.Random;
+import java.util.function.Supplier;
 
 /**
  * A Q-Learning agent with a Q-Table, i.e. a table of Q-Values. This table is
@@ -49,6 +49,12 @@ public class QLearningAgent extends Agent {
 
 	QTable qTable = new QTable();
 
+	/**
+	 * The states of the Q-Table: symmetric games share their q-values, so this is
+	 * X's canonical {@link StateIndex}.
+	 */
+	StateIndex states = qTable.getStates();
+
 	/**
 	 * This is the Reinforcement Learning environment that this agent will interact
 	 * with when it is training. By default, the opponent is the random agent which
@@ -57,6 +63,26 @@ public class QLearningAgent extends Agent {
 	 */
 	TTTEnvironment env = new TTTEnvironment();
 
+	/**
+	 * The number of actor threads when training as an {@link ActorLearner}
+	 * pipeline, or of learning threads when training with
+	 * {@link ParallelQLearning}, and the factory of their opponents. 0 to train on
+	 * this thread only.
+	 */
+	int actors = 0;
+	int threads = 0;
+	Supplier<Agent> opponents;
+
+	/**
+	 * The replay buffer, or null to learn from every transition only once. After
+	 * every move, {@code replayBatch} stored transitions are sampled, uniformly or
+	 * by priority, and learned from again.
+	 */
+	ReplayBuffer replay;
+	int replayBatch;
+	boolean prioritizedReplay;
+	Random replayRandom = new Random();
+
 	/**
 	 * Construct a Q-Learning agent that learns from interactions with
 	 * {@code opponent}.
@@ -82,16 +108,8 @@ public class QLearningAgent extends Agent {
 	 */
 
 	protected void initQTable() {
-		List<Game> allGames = Game.generateAllValidGames('X');// all valid games where it is X's turn, or it's terminal.
-		for (Game g : allGames) {
-			List<Move> moves = g.getPossibleMoves();
-			for (Move m : moves) {
-				this.qTable.addQValue(g, m, 0.0);
-				// System.out.println("initing q value. Game:"+g);
-				// System.out.println("Move:"+m);
-			}
-
-		}
+		// the table has a q-value for every valid game where it is X's turn
+		this.qTable.clear();
 
 	}
 
@@ -103,6 +121,75 @@ public class QLearningAgent extends Agent {
 		this(new RandomAgent(), 0.1, 69900, 0.9);
 	}
 
+	/**
+	 * Turns on experience replay: every transition played is also stored in a
+	 * buffer of the last {@code capacity} transitions, and after every move a
+	 * batch of stored transitions is learned from again, so that fewer episodes
+	 * need to be played. With prioritized replay, transitions are sampled in
+	 * proportion to (a power of) the error of their last update, and the updates
+	 * are weighted to correct the bias this sampling introduces.
+	 * 
+	 * @param capacity    the number of transitions kept, or 0 to turn replay off
+	 * @param batch       the number of transitions replayed after every move
+	 * @param prioritized whether to sample by priority rather than uniformly
+	 */
+	public void setReplay(int capacity, int batch, boolean prioritized) {
+		if (capacity < 0 || batch < 0)
+			throw new IllegalArgumentException("The capacity and batch size can't be negative");
+		this.replay = (capacity == 0) ? null : new ReplayBuffer(capacity);
+		this.replayBatch = batch;
+		this.prioritizedReplay = prioritized;
+	}
+
+	/**
+	 * Makes {@link #train()} an actor-learner pipeline: {@code actors} threads play
+	 * the episodes, each against its own opponent, and the training thread
+	 * applies the q-value updates. See {@link ActorLearner}.
+	 * 
+	 * The actors play in environments of their own, so {@link #env} and its
+	 * opponent are not used. Experience replay can't be combined with actors:
+	 * {@link #train()} throws if both are set.
+	 * 
+	 * @param actors    the number of actor threads, or 0 to play and learn on the
+	 *                  training thread
+	 * @param opponents makes an opponent for each actor thread
+	 * @throws IllegalArgumentException if {@code actors} is negative, or positive
+	 *                                  with no {@code opponents}
+	 */
+	public void setActors(int actors, Supplier<Agent> opponents) {
+		if (actors < 0)
+			throw new IllegalArgumentException("The number of actors can't be negative");
+		if (actors > 0 && opponents == null)
+			throw new IllegalArgumentException("The actors need an opponent supplier");
+		this.actors = actors;
+		this.opponents = opponents;
+	}
+
+	/**
+	 * Makes {@link #train()} run on {@code threads} threads at once, each playing
+	 * its share of the episodes against its own opponent and learning into its own
+	 * copy of the q-values, which are merged at regular intervals. See
+	 * {@link ParallelQLearning}.
+	 * 
+	 * As with {@link #setActors}, {@link #env} and its opponent are not used, and
+	 * experience replay can't be combined with it. Neither can actor threads:
+	 * {@link #train()} throws if both are set.
+	 * 
+	 * @param threads   the number of threads, or 0 to play and learn on the
+	 *                  training thread
+	 * @param opponents makes an opponent for each thread
+	 * @throws IllegalArgumentException if {@code threads} is negative, or positive
+	 *                                  with no {@code opponents}
+	 */
+	public void setThreads(int threads, Supplier<Agent> opponents) {
+		if (threads < 0)
+			throw new IllegalArgumentException("The number of threads can't be negative");
+		if (threads > 0 && opponents == null)
+			throw new IllegalArgumentException("The threads need an opponent supplier");
+		this.threads = threads;
+		this.opponents = opponents;
+	}
+
 	/**
 	 * Implement this method. It should play {@code this.numEpisodes} episodes of
 	 * Tic-Tac-Toe with the TTTEnvironment, updating q-values according to the
@@ -116,6 +203,37 @@ public class QLearningAgent extends Agent {
 	 */
 
 	public void train() {
+		if ((this.actors > 0 || this.threads > 0) && this.replay != null)
+			throw new IllegalStateException("Experience replay can't be used with several threads");
+		if (this.actors > 0 && this.threads > 0)
+			throw new IllegalStateException("Actor threads can't be combined with parallel learning threads");
+		if (this.actors > 0) {
+			// actor threads play the episodes, this thread learns from them
+			new ActorLearner(this.qTable, this.opponents, this.alpha, this.discount, this.epsilon, this.actors)
+					.train(this.numEpisodes);
+		} else if (this.threads > 0) {
+			// every thread learns into its own copy of the table, merged into this one
+			new ParallelQLearning(this.qTable, this.opponents, this.alpha, this.discount, this.epsilon, this.threads)
+					.train(this.numEpisodes);
+		} else
+			playEpisodes();
+
+		// --------------------------------------------------------
+		// you shouldn't need to delete the following lines of code.
+		this.policy = extractPolicy();
+		if (this.policy == null) {
+			System.out.println("Unimplemented methods! First implement the train() & extractPolicy methods");
+			// System.exit(1);
+		}
+	}
+
+	/**
+	 * Plays {@code this.numEpisodes} episodes in {@link #env}, updating the
+	 * q-values after every move.
+	 */
+	private void playEpisodes() {
+		// The behaviour policy: it follows the Q-Table as it is updated
+		EpsilonGreedyPolicy behaviour = new EpsilonGreedyPolicy(this.qTable, this.epsilon);
 		// Iterate over all the episodes that represent he different interactions with
 		// the environment
 		for (int i = 0; i < numEpisodes; i++) {
@@ -128,41 +246,53 @@ public class QLearningAgent extends Agent {
 				}
 
 				// Choose a move based on an epsilon-greedy policy for the current game state
-				Move selectedMove = chooseMoveWithEpsilonGreedyPolicy(game);
+				Move selectedMove = behaviour.getMove(game);
 				// Execute the selected move on the environment with exception handling.
 				Outcome result = executeMoveSafely(selectedMove);
 
-				// These variables holds the current q-value and updated q-value.
-				double qvalue;
-				// adds to the current Q-value with the new information learned from the
-				// executed move
-				double qLearnedValue;
-
-				// Gets the q-value from the q-table associated with the state
-				qvalue = this.qTable.getQValue(result.s, result.move);
-
-				// Calculate the weighted old value by multiplying the current Q-value by the
-				// factor (1 - alpha)
-				double oldWeightedValue = (1 - this.alpha) * qvalue;
-				// Estimate the future cumulative reward by adding the immediate reward to the
-				// discounted maximum Q-value of the next state.
-				double futureRewardEstimate = result.localReward + this.discount * calculateMaxQValue(result.sPrime);
-				// Calculate the updated Q-value by combining the old value with
-				// the future reward estimate.
-				qLearnedValue = oldWeightedValue + this.alpha * futureRewardEstimate;
-				// Update the Q-value in the Q-table for the given state-action pair
-				this.qTable.addQValue(result.s, result.move, qLearnedValue);
+				// The state's id, the move's cell in its representative, and the id of the
+				// state after the opponent's move
+				int s = this.qTable.indexOf(result.s);
+				int a = QTable.actionOf(result.s, result.move);
+				int next = this.qTable.indexOf(result.sPrime);
+
+				// Move the Q-value of the state-action pair towards the reward plus the
+				// discounted maximum Q-value of the next state. This also keeps the
+				// table's greedy moves up to date.
+				this.qTable.learn(s, a, result.localReward, next, this.alpha, this.discount);
+
+				// Store the transition, and learn from a batch of past ones again
+				if (this.replay != null) {
+					// new transitions get the largest priority, so they are replayed soon
+					this.replay.add(s, a, result.localReward, next);
+					// correct more and more of the bias of prioritized sampling, fully by the
+					// last episode
+					replayBatch(ReplayBuffer.WEIGHT_EXPONENT_START
+							+ (1 - ReplayBuffer.WEIGHT_EXPONENT_START) * (i + 1) / numEpisodes);
+				}
 			}
 			this.env.reset(); // resets the environment to its initial state, allowing the agent to start a
 								// new episode from the beginning
 		}
+	}
 
-		// --------------------------------------------------------
-		// you shouldn't need to delete the following lines of code.
-		this.policy = extractPolicy();
-		if (this.policy == null) {
-			System.out.println("Unimplemented methods! First implement the train() & extractPolicy methods");
-			// System.exit(1);
+	/**
+	 * Samples {@code replayBatch} transitions from {@link #replay} and applies the
+	 * Q-Learning update to each of them. With prioritized replay, each update is
+	 * scaled by the transition's importance sampling weight, and its priority is
+	 * updated.
+	 * 
+	 * @param beta the exponent of the importance sampling weights
+	 */
+	private void replayBatch(double beta) {
+		for (int i = 0; i < this.replayBatch; i++) {
+			int slot = this.prioritizedReplay ? this.replay.samplePrioritized(this.replayRandom)
+					: this.replay.sampleUniform(this.replayRandom);
+			double weight = this.prioritizedReplay ? this.replay.weight(slot, beta) : 1;
+			double error = this.qTable.learn(this.replay.state(slot), this.replay.cell(slot), this.replay.reward(slot),
+					this.replay.next(slot), weight * this.alpha, this.discount);
+			if (this.prioritizedReplay)
+				this.replay.setPriority(slot, error);
 		}
 	}
 
@@ -185,49 +315,6 @@ public class QLearningAgent extends Agent {
 		return outcome;
 	}
 
-	/**
-	 * Chooses a move based on an epsilon-greedy policy, balancing exploration and
-	 * exploitation.
-	 *
-	 * @param gameState The current state of the game.
-	 * @return The selected move according to the epsilon-greedy policy.
-	 */
-	private Move chooseMoveWithEpsilonGreedyPolicy(Game gameState) {
-		List<Move> possibleMoves = gameState.getPossibleMoves(); // List of possible moves in the current game state.
-		Move selectedMove = null; // move to be selected based on the policy.
-		Random random = new Random(); // generating random values.
-		double currentQValue = 0; // stores the q-value of the current move
-		double maxQValue = -Double.MAX_VALUE; // maximum Q-value encountered so far.
-		double randomValue = random.nextDouble(); // random value used for epsilon-greedy exploration
-
-		// If the random value is less than the epsilon it explores by choosing a random
-		// move from the possible moves. Else if the random value is greater it exploits
-		// by choosing the move with the highest Q-value
-		if (randomValue < epsilon) {
-			if (!possibleMoves.isEmpty()) {
-				// Generates a random index within the range of the list of possible moves
-				int randomIndex = random.nextInt(possibleMoves.size());
-				// move at the randomly generated index
-				selectedMove = possibleMoves.get(randomIndex);
-			}
-		} else {
-			// selects the move with the highest qvalue among the possible moves. This
-			// represents the exploitation strategy, where the agent chooses moves
-			// that have higher estimated values based on its learned Q-table.
-			for (Move move : possibleMoves) { // iterates over each move in the list of possible moves
-				currentQValue = qTable.getQValue(gameState, move);// retrieves the qvalue from the table for each move
-				// If the current q value is greater than or equal to the maximum q value, it
-				// updates maxQValue with the current q value.
-				if (currentQValue >= maxQValue) {
-					maxQValue = currentQValue;
-					selectedMove = move;
-				}
-			}
-		}
-
-		return selectedMove; // selected move is returned
-	}
-
 	/**
 	 * Implement this method. It should use the q-values in the {@code qTable} to
 	 * extract a policy and return it.
@@ -235,67 +322,9 @@ public class QLearningAgent extends Agent {
 	 * @return the policy currently inherent in the QTable
 	 */
 	public Policy extractPolicy() {
-		// Create a new policy
-		Policy extractedPolicy = new Policy();
-
-		// Iterate through all games in the QTable
-		for (Game currentGame : this.qTable.keySet()) {
-			// If the current game is terminal,skip to the next iteration
-			if (currentGame.isTerminal()) {
-				continue;
-			}
-
-			double maxQValue = -Integer.MAX_VALUE; // Initialize the maximum Q-value to a very low value
-			Move bestMove = null; // Initialize the best move to null
-
-			// Iterate through all possible moves of the current game and
-			// find a move that gives the maximum Q-value
-			for (Move currentMove : currentGame.getPossibleMoves()) {
-				// To store the Q-value that the agent has learned for a specific game state and
-				// move
-				double currentQValue = qTable.getQValue(currentGame, currentMove);
-				// iterates through all possible moves and finds the move with the maximum
-				// Q-value.
-				if (currentQValue > maxQValue) {
-					maxQValue = currentQValue;
-					bestMove = currentMove;
-				}
-			}
-			// Set the move associated with the current state to the best move in the policy
-			extractedPolicy.policy.put(currentGame, bestMove);
-		}
-		// Return the extracted policy
-		return extractedPolicy;
-	}
-
-	/**
-	 * Calculates the maximum Q-value for a given game state. If the game state is
-	 * terminal, the method returns 0.0.
-	 *
-	 * @param gameStatePrime The game state for which to calculate the maximum
-	 *                       Q-value.
-	 * @return The maximum Q-value associated with any possible move in the given
-	 *         game state.
-	 */
-	private double calculateMaxQValue(Game gameStatePrime) {
-		//Initialize the maxQvalue to a very low number.
-		double maxQValue = -Double.MAX_VALUE;
-		//Variable to store the q-value of the current move during the iteration of all the possible moves
-		double currentQValue = 0;
-		// If the game state is a terminal state than it returns 0 for the q-value
-		if (gameStatePrime.isTerminal()) {
-			return 0.0;
-		}
-		// iterates through all possible moves in the given game state
-		for (Move move : gameStatePrime.getPossibleMoves()) {
-	        // Get the Q-value for the current move in the given game state
-			currentQValue = qTable.getQValue(gameStatePrime, move);
-			//update maximum Q-value if the current Q-value is greater than existing max value
-			if (currentQValue > maxQValue) {
-				maxQValue = currentQValue;
-			}
-		}
-		return maxQValue; // Return the maximum Q-value found among all possible moves in the given game state
+		// The Q-Table keeps its greedy moves up to date during training: take a
+		// copy, so that further training doesn't change the returned policy
+		return qTable.greedyPolicy();
 	}
 
 	public static void main(String a[]) throws IllegalMoveException {
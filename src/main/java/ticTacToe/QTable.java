@@ -1,59 +1,310 @@
 package ticTacToe;
 
-import java.util.HashMap;
+import java.util.Arrays;
+
 /**
- * This class a simple implementation of a Q-Table. It's a subclass of {@link java.util.HashMap}, so all the methods from 
- * that class are available. Two methods for adding and retrieving q-values to/from the table are provided.
- * 
+ * This class a simple implementation of a Q-Table. The q-values are stored in a
+ * flat {@code double} array with 9 entries per state, indexed by the dense
+ * state id of a {@link StateIndex} and the cell of the move, so a look-up is an
+ * array access: no hashing and no boxing.
+ *
+ * Symmetric games share their q-values: the index is canonical, and the
+ * {@link Game}/{@link Move} methods store and look up (g,m) as the equivalent
+ * q-state in {@link Game#canonical()}. The primitive methods
+ * {@link #get(int, int)} and {@link #update(int, int, double)} take the id of
+ * the orbit and a cell of its representative, as given by {@link #indexOf} and
+ * {@link #actionOf}.
+ *
+ * All q-values start at 0.
+ *
+ * The table also keeps the greedy move and the largest q-value of every state,
+ * so {@link #argmax(int)} and {@link #max(int)} are array reads. They are
+ * updated on every write: a write to any other move only has to be compared
+ * with the current best, and the state's moves are only scanned again when the
+ * q-value of the best move goes down.
+ *
  * @author ae187
  *
  */
-public class QTable extends HashMap<Game, HashMap<Move,Double>> {
+public class QTable {
+
+	/**
+	 * the states of the table
+	 */
+	final StateIndex states;
+
+	/**
+	 * (state id, cell) -> q-value, at {@code 9*id+cell}
+	 */
+	final double[] values;
+
+	/**
+	 * state id -> the legal moves of the representative as a mask of empty cells,
+	 * 0 for terminal states
+	 */
+	final short[] moves;
+
+	/**
+	 * state id -> the cell of the legal move with the largest q-value, the lowest
+	 * cell on ties; -1 for terminal states
+	 */
+	final byte[] argmax;
+
+	/**
+	 * state id -> the largest q-value of its legal moves, 0 for terminal states
+	 */
+	final double[] max;
+
+	/**
+	 * A table over X's canonical states.
+	 */
+	public QTable() {
+		this(StateIndex.of('X', true));
+	}
+
+	/**
+	 *
+	 * @param states a canonical index of the states to store q-values for
+	 * @throws IllegalArgumentException if the index is not canonical
+	 */
+	public QTable(StateIndex states) {
+		if (!states.isCanonical())
+			throw new IllegalArgumentException("The state index must be canonical");
+		this.states = states;
+		this.values = new double[9 * states.size()];
+		this.moves = new short[states.size()];
+		this.argmax = new byte[states.size()];
+		this.max = new double[states.size()];
+		for (int s = 0; s < states.size(); s++) {
+			Game g = states.getGame(s);
+			moves[s] = (short) (g.isTerminal() ? 0 : g.getEmptyCells());
+		}
+		initGreedy();
+	}
 
-	
-	public QTable()
-	{
-		super();
+	/**
+	 * All q-values are 0: the greedy move is the first one.
+	 */
+	private void initGreedy() {
+		Arrays.fill(max, 0);
+		for (int s = 0; s < moves.length; s++)
+			argmax[s] = (byte) (moves[s] == 0 ? -1 : Integer.numberOfTrailingZeros(moves[s]));
 	}
-	
+
 	/**
-	 * 
+	 *
+	 * @return the index of the states of the table
 	 */
-	private static final long serialVersionUID = 1L;
-	
+	public StateIndex getStates() {
+		return states;
+	}
+
 	/**
-	 * 
+	 *
 	 * @param g
-	 * @param m
-	 * @return the q value associated with the q-state {@code (g,m)}, where game is a {@link Game} object 
-	 * and m is a {@link Move} object}
-	 */
-	public Double getQValue(Game g, Move m)
-	{
-		if (containsKey(g))
-		{
-			HashMap<Move,Double> moves=get(g);
-			if (moves.containsKey(m))
-				return moves.get(m);
+	 * @return the id of {@code g}'s orbit, or -1 if it is not in the table
+	 */
+	public int indexOf(Game g) {
+		return states.indexOf(g);
+	}
+
+	/**
+	 *
+	 * @param g a game
+	 * @param m a move in {@code g}
+	 * @return the cell of the corresponding move in {@code g}'s
+	 *         {@link Game#canonical()} representative
+	 */
+	public static int actionOf(Game g, Move m) {
+		return Symmetry.cell(GameStateRegistry.intern(g).canonicalTransform(), m.cell);
+	}
+
+	/**
+	 *
+	 * @param s a state id
+	 * @return the cells of the legal moves of {@code s}'s representative, as a bit
+	 *         mask. 0 if the state is terminal.
+	 */
+	public int getMoves(int s) {
+		return moves[s];
+	}
+
+	/**
+	 *
+	 * @param s a state id
+	 * @param a a legal cell of the state's representative
+	 * @return the q-value of {@code (s,a)}
+	 */
+	public double get(int s, int a) {
+		return values[9 * s + a];
+	}
+
+	/**
+	 * Sets the q-value of {@code (s,a)} to {@code v}, and updates the greedy move
+	 * and the largest q-value of {@code s}.
+	 *
+	 * @param s a state id
+	 * @param a a legal cell of the state's representative
+	 * @param v
+	 */
+	public void update(int s, int a, double v) {
+		double old = values[9 * s + a];
+		values[9 * s + a] = v;
+
+		int best = argmax[s];
+		if (a != best) {
+			// a takes over if it is now better, or as good with a lower cell
+			if (v > max[s] || (v == max[s] && a < best)) {
+				argmax[s] = (byte) a;
+				max[s] = v;
+			}
+			return;
 		}
-		
-		return null;
+		if (v >= old) {
+			max[s] = v; // the greedy move only got better
+			return;
+		}
+
+		// the greedy move got worse: look for the best move again
+		rescan(s);
 	}
-	
+
+	/**
+	 * The Q-Learning update of {@code (s,a)} for a transition to {@code next}: the
+	 * q-value moves a fraction {@code alpha} of the way to
+	 * {@code reward + discount * max(next)}.
+	 *
+	 * @param s        a state id
+	 * @param a        a legal cell of the state's representative
+	 * @param reward   the reward of the transition
+	 * @param next     the id of the state it led to
+	 * @param alpha    the learning rate
+	 * @param discount
+	 * @return the temporal difference error: the target minus the q-value before
+	 *         the update
+	 */
+	public double learn(int s, int a, double reward, int next, double alpha, double discount) {
+		double q = get(s, a);
+		double error = reward + discount * max(next) - q;
+		update(s, a, q + alpha * error);
+		return error;
+	}
+
+	/**
+	 * Finds the greedy move and the largest q-value of {@code s} from scratch.
+	 */
+	private void rescan(int s) {
+		if (moves[s] == 0)
+			return; // terminal: no move, worth 0
+
+		double m = -Double.MAX_VALUE;
+		for (int empty = moves[s]; empty != 0; empty &= empty - 1) {
+			int c = Integer.numberOfTrailingZeros(empty);
+			if (values[9 * s + c] > m) {
+				m = values[9 * s + c];
+				argmax[s] = (byte) c;
+			}
+		}
+		max[s] = m;
+	}
+
+	/**
+	 * Finds the greedy moves and largest q-values again, after {@link #values}
+	 * were written directly.
+	 */
+	void rescanAll() {
+		for (int s = 0; s < moves.length; s++)
+			rescan(s);
+	}
+
+	/**
+	 * Makes this table a copy of {@code other}.
+	 *
+	 * @param other a table over the same states
+	 */
+	void copyFrom(QTable other) {
+		if (other.states != states)
+			throw new IllegalArgumentException("The tables have different states");
+		System.arraycopy(other.values, 0, values, 0, values.length);
+		System.arraycopy(other.argmax, 0, argmax, 0, argmax.length);
+		System.arraycopy(other.max, 0, max, 0, max.length);
+	}
+
 	/**
-	 * Adds the q-value mapping (g,m)->v to the q-table represented by this map.
+	 *
+	 * @param s a state id
+	 * @return the cell, in the state's representative, of the legal move with the
+	 *         largest q-value, the lowest one on ties. -1 if the state is
+	 *         terminal.
+	 */
+	public int argmax(int s) {
+		return argmax[s];
+	}
+
+	/**
+	 *
+	 * @param s a state id
+	 * @return the largest q-value of the legal moves of {@code s}, or 0 if it is
+	 *         terminal
+	 */
+	public double max(int s) {
+		return max[s];
+	}
+
+	/**
+	 *
+	 * @return the greedy policy of the current q-values. It is a copy: later
+	 *         updates don't change it.
+	 */
+	public IndexedPolicy greedyPolicy() {
+		return new IndexedPolicy(states, argmax.clone());
+	}
+
+	/**
+	 * Sets all q-values back to 0.
+	 */
+	public void clear() {
+		Arrays.fill(values, 0);
+		initGreedy();
+	}
+
+	/**
+	 *
+	 * @param g
+	 * @param m
+	 * @return the q value associated with the q-state {@code (g,m)}, where game is
+	 *         a {@link Game} object and m is a {@link Move} object, or null if
+	 *         {@code g} is not in the table or {@code m} is not legal in it
+	 */
+	public Double getQValue(Game g, Move m) {
+		int s = indexOf(g);
+		if (s < 0)
+			return null;
+		int a = actionOf(g, m);
+		if ((moves[s] & (1 << a)) == 0)
+			return null;
+
+		return get(s, a);
+	}
+
+	/**
+	 * Adds the q-value mapping (g,m)->v to the q-table.
+	 *
 	 * @param g
 	 * @param m
 	 * @param v
+	 * @throws IllegalArgumentException if {@code g} is not in the table or
+	 *                                  {@code m} is not legal in it
 	 */
-	public void addQValue(Game g, Move m, Double v)
-	{
-		if (!containsKey(g))
-			this.put(g, new HashMap<Move,Double>());
-		
-		this.get(g).put(m, v);
+	public void addQValue(Game g, Move m, Double v) {
+		int s = indexOf(g);
+		if (s < 0)
+			throw new IllegalArgumentException("Game not in the Q-Table: " + g);
+		int a = actionOf(g, m);
+		if ((moves[s] & (1 << a)) == 0)
+			throw new IllegalArgumentException("Illegal move " + m + " in " + g);
+
+		update(s, a, v);
 	}
-	
-	
 
 }
@@ -0,0 +1,60 @@
+package ticTacToe;
+
+/**
+ * The work saved by a warm started {@code replan} of a planning agent: the work
+ * of the replan, next to that of solving the same new parameters from scratch
+ * with the same engine. See {@link ValueIterationAgent#replan(MDPConfig)} and
+ * {@link PolicyIterationAgent#replan(MDPConfig)}.
+ *
+ * A sweep is a value iteration sweep for the {@link ValueIterationAgent}, and
+ * a round of policy improvement for the {@link PolicyIterationAgent}. A policy
+ * change is a state whose chosen move changed from one move to another in one
+ * of them.
+ */
+public class ReplanReport {
+
+	/**
+	 * sweeps and policy changes of the solve from scratch, under the new
+	 * parameters
+	 */
+	public final int coldSweeps;
+	public final int coldPolicyChanges;
+
+	/**
+	 * sweeps and policy changes of the warm started replan, under the new
+	 * parameters
+	 */
+	public final int warmSweeps;
+	public final int warmPolicyChanges;
+
+	public ReplanReport(int coldSweeps, int warmSweeps, int coldPolicyChanges, int warmPolicyChanges) {
+		this.coldSweeps = coldSweeps;
+		this.warmSweeps = warmSweeps;
+		this.coldPolicyChanges = coldPolicyChanges;
+		this.warmPolicyChanges = warmPolicyChanges;
+	}
+
+	/**
+	 *
+	 * @return the sweeps saved by the warm start; negative if it needed more
+	 */
+	public int getSweepsSaved() {
+		return coldSweeps - warmSweeps;
+	}
+
+	/**
+	 *
+	 * @return the policy changes saved by the warm start; negative if it needed
+	 *         more
+	 */
+	public int getPolicyChangesSaved() {
+		return coldPolicyChanges - warmPolicyChanges;
+	}
+
+	public String toString() {
+		return "Sweeps: " + warmSweeps + " (from scratch " + coldSweeps + ", saved " + getSweepsSaved()
+				+ "), policy changes: " + warmPolicyChanges + " (from scratch " + coldPolicyChanges + ", saved "
+				+ getPolicyChangesSaved() + ")";
+	}
+
+}
@@ -0,0 +1,233 @@
+package ticTacToe;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A fixed size experience replay buffer of Q-Learning transitions (state id,
+ * cell, reward, next state id). The transitions are stored in a direct
+ * {@link ByteBuffer}, one 16 byte record each, and the buffer is a ring: when
+ * it is full, a new transition replaces the oldest one. Nothing is allocated
+ * after construction.
+ *
+ * Transitions can be sampled uniformly, or in proportion to a priority (see
+ * {@link #setPriority}). The priorities are kept in a sum tree, so sampling and
+ * updating a priority take time logarithmic in the capacity. New transitions
+ * get the largest priority seen so far, so they are likely to be replayed at
+ * least once.
+ *
+ * Sampling by priority changes how often each transition is learned from, and
+ * with a random opponent that biases the q-values towards the outcomes with the
+ * largest errors. {@link #weight} gives the importance sampling weight that
+ * corrects for it; the smallest priority is kept in a second tree for it.
+ */
+class ReplayBuffer {
+
+	/**
+	 * bytes per record: the state id and cell packed in an int, the next state id,
+	 * and the reward
+	 */
+	static final int RECORD = 16;
+
+	/**
+	 * a priority is {@code (|error| + PRIORITY_EPSILON)^PRIORITY_EXPONENT}: 0
+	 * gives uniform sampling, 1 fully proportional to the error
+	 */
+	static final double PRIORITY_EXPONENT = 0.6;
+	static final double PRIORITY_EPSILON = 1e-3;
+
+	/**
+	 * the exponent of the importance sampling weights at the start of training;
+	 * it should be raised to 1, the full correction, by the end
+	 */
+	static final double WEIGHT_EXPONENT_START = 0.4;
+
+	final int capacity;
+
+	private final ByteBuffer records;
+
+	/**
+	 * sum tree of the priorities: the priority of slot {@code i} is at
+	 * {@code leaves+i}, and every inner node {@code k} holds the sum of its
+	 * children {@code 2k} and {@code 2k+1}, so the total is at 1
+	 */
+	private final double[] tree;
+	private final int leaves;
+
+	/**
+	 * the same tree with the minimum of the children in every inner node, and
+	 * infinity for the empty slots
+	 */
+	private final double[] minTree;
+
+	/**
+	 * the largest priority given so far
+	 */
+	private double maxPriority = 1;
+
+	/**
+	 * the slot the next transition goes into, and the number of transitions
+	 * stored
+	 */
+	private int next;
+	private int size;
+
+	/**
+	 *
+	 * @param capacity the number of transitions kept
+	 */
+	ReplayBuffer(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive");
+		this.capacity = capacity;
+		this.records = ByteBuffer.allocateDirect(capacity * RECORD).order(ByteOrder.nativeOrder());
+		int leaves = Integer.highestOneBit(capacity);
+		this.leaves = (leaves < capacity) ? leaves << 1 : leaves;
+		this.tree = new double[2 * this.leaves];
+		this.minTree = new double[2 * this.leaves];
+		Arrays.fill(minTree, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 *
+	 * @return the number of transitions stored
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Stores a transition, replacing the oldest one if the buffer is full.
+	 *
+	 * @param s      the state id
+	 * @param cell   the cell played
+	 * @param reward
+	 * @param next   the id of the next state
+	 * @return the slot of the transition
+	 */
+	int add(int s, int cell, double reward, int next) {
+		int slot = this.next;
+		int at = slot * RECORD;
+		records.putInt(at, (s << 4) | cell);
+		records.putInt(at + 4, next);
+		records.putDouble(at + 8, reward);
+		setTree(slot, maxPriority);
+
+		this.next = (slot + 1 == capacity) ? 0 : slot + 1;
+		if (size < capacity)
+			size++;
+		return slot;
+	}
+
+	int state(int slot) {
+		return records.getInt(slot * RECORD) >>> 4;
+	}
+
+	int cell(int slot) {
+		return records.getInt(slot * RECORD) & 0xF;
+	}
+
+	int next(int slot) {
+		return records.getInt(slot * RECORD + 4);
+	}
+
+	double reward(int slot) {
+		return records.getDouble(slot * RECORD + 8);
+	}
+
+	/**
+	 *
+	 * @param random
+	 * @return a slot picked uniformly among the stored transitions
+	 */
+	int sampleUniform(Random random) {
+		if (size == 0)
+			throw new IllegalStateException("The replay buffer is empty");
+		return random.nextInt(size);
+	}
+
+	/**
+	 *
+	 * @param random
+	 * @return a slot picked with probability proportional to its priority
+	 */
+	int samplePrioritized(Random random) {
+		if (size == 0)
+			throw new IllegalStateException("The replay buffer is empty");
+
+		// walk down from the root to the leaf whose range of the total contains u
+		double u = random.nextDouble() * tree[1];
+		int k = 1;
+		while (k < leaves) {
+			if (u < tree[2 * k] || tree[2 * k + 1] == 0)
+				k = 2 * k;
+			else {
+				u -= tree[2 * k];
+				k = 2 * k + 1;
+			}
+		}
+		return k - leaves;
+	}
+
+	/**
+	 * Sets the priority of a transition from the error of its last update.
+	 *
+	 * @param slot
+	 * @param error the temporal difference error
+	 */
+	void setPriority(int slot, double error) {
+		double priority = Math.pow(Math.abs(error) + PRIORITY_EPSILON, PRIORITY_EXPONENT);
+		if (priority > maxPriority)
+			maxPriority = priority;
+		setTree(slot, priority);
+	}
+
+	/**
+	 * The importance sampling weight of a transition sampled by priority:
+	 * {@code (N*P(i))^-beta}, divided by the largest weight of the stored
+	 * transitions so that it is at most 1. Scaling the update of the transition by
+	 * it undoes the bias of sampling it with probability {@code P(i)} rather than
+	 * {@code 1/N}.
+	 *
+	 * @param slot
+	 * @param beta how much to correct, from 0 (not at all) to 1 (fully)
+	 * @return the weight, between 0 and 1
+	 */
+	double weight(int slot, double beta) {
+		// the largest weight is that of the smallest priority, and the N and the
+		// total priority cancel out
+		return Math.pow(minTree[1] / tree[leaves + slot], beta);
+	}
+
+	/**
+	 *
+	 * @param slot
+	 * @return the priority of a slot, 0 if it is empty
+	 */
+	double priority(int slot) {
+		return tree[leaves + slot];
+	}
+
+	/**
+	 *
+	 * @return the sum of the priorities of all the slots
+	 */
+	double totalPriority() {
+		return tree[1];
+	}
+
+	private void setTree(int slot, double priority) {
+		int k = leaves + slot;
+		tree[k] = priority;
+		minTree[k] = priority;
+		// sum the children again rather than adding the change, so that rounding
+		// errors don't build up
+		for (k >>= 1; k >= 1; k >>= 1) {
+			tree[k] = tree[2 * k] + tree[2 * k + 1];
+			minTree[k] = Math.min(minTree[2 * k], minTree[2 * k + 1]);
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * Solves a {@link CompiledMDP} exactly in one pass, without iterating to a
+ * fixed point.
+ *
+ * Every move adds a mark to the board, so no position can be reached again and
+ * the MDP is acyclic, layered by ply. If the states are numbered by ply (see
+ * {@link StateIndex#isOrderedByPly()}), every transition goes to a higher id.
+ * Going through the ids backwards, from full boards to the empty board, the
+ * values of all successors are final when a state is reached, so a single
+ * Bellman backup per state gives its optimal value and move. In the same way,
+ * the values of a fixed policy are found exactly by back-substitution, see
+ * {@link #evaluate}.
+ */
+public class RetrogradeSolver {
+
+	/**
+	 * The optimal values and policy of a model, both indexed by state id.
+	 */
+	public static class Solution {
+
+		/**
+		 * state id -> optimal value. 0 for terminal states.
+		 */
+		public final double[] values;
+
+		/**
+		 * state id -> cell of an optimal move, or -1 for terminal states. As in
+		 * {@link IndexedPolicy}, these are cells of the states in the model's index.
+		 */
+		public final byte[] policy;
+
+		Solution(double[] values, byte[] policy) {
+			this.values = values;
+			this.policy = policy;
+		}
+	}
+
+	private RetrogradeSolver() {
+	}
+
+	/**
+	 *
+	 * @param model    a model over a ply ordered {@link StateIndex}
+	 * @param discount
+	 * @return the optimal values and policy. Among equally good moves the first
+	 *         one, in cell order, is chosen.
+	 * @throws IllegalArgumentException if the model's states are not ordered by
+	 *                                  ply
+	 */
+	public static Solution solve(CompiledMDP model, double discount) {
+		return solve(model, discount, null);
+	}
+
+	/**
+	 * Like {@link #solve(CompiledMDP, double)}, also giving the optimal q-values.
+	 *
+	 * @param model    a model over a ply ordered {@link StateIndex}
+	 * @param discount
+	 * @param q        receives the q-value of every action, indexed by action id.
+	 *                 May be null.
+	 * @return the optimal values and policy
+	 */
+	public static Solution solve(CompiledMDP model, double discount, double[] q) {
+		if (!model.getStates().isOrderedByPly())
+			throw new IllegalArgumentException("The states must be ordered by ply");
+
+		int n = model.numStates();
+		double[] values = new double[n];
+		byte[] policy = new byte[n];
+		Arrays.fill(policy, (byte) -1);
+
+		int[] actionStart = model.actionStart;
+		int[] transitionStart = model.transitionStart;
+		for (int s = n - 1; s >= 0; s--) {
+			if (actionStart[s] == actionStart[s + 1])
+				continue; // terminal: worth 0
+
+			double max = -Integer.MAX_VALUE;
+			int best = -1;
+			for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+				double qa = 0;
+				for (int t = transitionStart[a]; t < transitionStart[a + 1]; t++) {
+					if (model.next[t] <= s)
+						throw new IllegalStateException("Transition to a state that is not solved yet");
+					qa += model.prob[t] * (model.reward[t] + discount * values[model.next[t]]);
+				}
+				if (q != null)
+					q[a] = qa;
+				if (qa > max) {
+					max = qa;
+					best = a;
+				}
+			}
+			values[s] = max;
+			policy[s] = model.actionCell[best];
+		}
+		return new Solution(values, policy);
+	}
+
+	/**
+	 * Computes the exact values of a fixed policy by back-substitution: going
+	 * through the states backwards, each value only depends on values already
+	 * computed.
+	 *
+	 * @param model    a model over a ply ordered {@link StateIndex}
+	 * @param discount
+	 * @param policy   the cell to play in each state, indexed by state id; ignored
+	 *                 for terminal states
+	 * @param values   receives the values of the policy, indexed by state id
+	 * @throws IllegalArgumentException if the model's states are not ordered by
+	 *                                  ply, or the policy has no legal move for a
+	 *                                  state
+	 */
+	public static void evaluate(CompiledMDP model, double discount, byte[] policy, double[] values) {
+		if (!model.getStates().isOrderedByPly())
+			throw new IllegalArgumentException("The states must be ordered by ply");
+
+		for (int s = model.numStates() - 1; s >= 0; s--) {
+			if (model.isTerminal(s)) {
+				values[s] = 0;
+				continue;
+			}
+			int a = model.actionOf(s, policy[s]);
+			if (a < 0)
+				throw new IllegalArgumentException("No legal move in the policy for state " + s);
+			values[s] = model.qValue(a, values, discount);
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A dense numbering of a set of game states: each state gets an id in
+ * {@code [0, size())}, so per-state tables (values, policies, q-values) can be
+ * stored in primitive arrays indexed by id instead of {@link java.util.HashMap}s
+ * keyed by {@link Game}.
+ *
+ * The states are the ones returned by {@link Game#generateAllValidGames(char)}.
+ * They can optionally be ordered by ply (number of marks on the board), so that
+ * a sweep over the ids visits the states in the order the game is played, and a
+ * backwards sweep visits every state after all of its successors.
+ *
+ * A canonical index only numbers one state per symmetry orbit (see
+ * {@link Game#canonical()}): {@link #getGame(int)} returns the representative,
+ * and {@link #indexOf(Game)} maps every game of the orbit to its id. Moves
+ * stored against a canonical id are moves in the representative, and are
+ * mapped back with {@link Game#fromCanonical(Move)}.
+ */
+public class StateIndex {
+
+	/**
+	 * id -> game
+	 */
+	private final Game[] games;
+
+	/**
+	 * game hash -> id, or -1 if the game is not in the index
+	 */
+	private final int[] ids = new int[Game.NUM_HASHES];
+
+	/**
+	 * When ordered by ply, the states with {@code p} marks on the board have ids
+	 * {@code plyStart[p]} to {@code plyStart[p+1]-1}. Null otherwise.
+	 */
+	private final int[] plyStart;
+
+	/**
+	 * true if only one state per symmetry orbit is numbered
+	 */
+	private final boolean canonical;
+
+	/**
+	 * Shared, ply ordered indices for X's and O's states, full and canonical,
+	 * built on first use.
+	 */
+	private static final StateIndex[] shared = new StateIndex[4];
+
+	/**
+	 * Indexes all valid games where it is {@code xo}'s turn or the game is over.
+	 *
+	 * @param xo         'X' or 'O'
+	 * @param orderByPly if true, ids are assigned in increasing number of marks on
+	 *                   the board
+	 */
+	public StateIndex(char xo, boolean orderByPly) {
+		this(xo, orderByPly, false);
+	}
+
+	/**
+	 * Indexes all valid games where it is {@code xo}'s turn or the game is over,
+	 * optionally only one per symmetry orbit.
+	 *
+	 * @param xo         'X' or 'O'
+	 * @param orderByPly if true, ids are assigned in increasing number of marks on
+	 *                   the board
+	 * @param canonical  if true, only the {@link Game#canonical()} representatives
+	 *                   get ids, and the other games share their representative's
+	 *                   id
+	 */
+	public StateIndex(char xo, boolean orderByPly, boolean canonical) {
+		this.canonical = canonical;
+		List<Game> all = Game.generateAllValidGames(xo);
+		if (canonical) {
+			List<Game> representatives = new ArrayList<Game>();
+			for (Game g : all)
+				if (g.canonicalTransform() == Symmetry.IDENTITY)
+					representatives.add(g);
+			all = representatives;
+		}
+		this.games = new Game[all.size()];
+
+		if (orderByPly) {
+			// counting sort on the number of marks, keeping the original order within
+			// a ply.
+			this.plyStart = new int[11];
+			for (Game g : all)
+				plyStart[g.moveCount + 1]++;
+			for (int p = 0; p < 10; p++)
+				plyStart[p + 1] += plyStart[p];
+
+			int[] next = new int[10];
+			System.arraycopy(plyStart, 0, next, 0, 10);
+			for (Game g : all)
+				games[next[g.moveCount]++] = g;
+		} else {
+			this.plyStart = null;
+			all.toArray(games);
+		}
+
+		Arrays.fill(ids, -1);
+		for (int id = 0; id < games.length; id++)
+			ids[games[id].hashCode()] = id;
+
+		if (canonical)
+			for (Game g : Game.generateAllValidGames(xo))
+				ids[g.hashCode()] = ids[g.canonical().hashCode()];
+	}
+
+	/**
+	 * The shared, ply ordered index of {@code xo}'s states. It is built once and
+	 * then reused by every agent.
+	 *
+	 * @param xo        'X' or 'O'
+	 * @param canonical whether to number one state per symmetry orbit
+	 * @return the index
+	 */
+	public static synchronized StateIndex of(char xo, boolean canonical) {
+		if (xo != 'X' && xo != 'O')
+			throw new IllegalArgumentException("Argument should be either 'X' or 'O'");
+
+		int i = ((xo == 'X') ? 0 : 2) + (canonical ? 1 : 0);
+		if (shared[i] == null)
+			shared[i] = new StateIndex(xo, true, canonical);
+		return shared[i];
+	}
+
+	/**
+	 *
+	 * @return the number of states
+	 */
+	public int size() {
+		return games.length;
+	}
+
+	/**
+	 *
+	 * @param g
+	 * @return the id of {@code g}, or -1 if it is not in the index
+	 */
+	public int indexOf(Game g) {
+		return ids[g.hashCode()];
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the game with this id
+	 */
+	public Game getGame(int id) {
+		return games[id];
+	}
+
+	/**
+	 *
+	 * @return true if only one state per symmetry orbit is numbered
+	 */
+	public boolean isCanonical() {
+		return canonical;
+	}
+
+	/**
+	 *
+	 * @return true if the ids are ordered by ply
+	 */
+	public boolean isOrderedByPly() {
+		return plyStart != null;
+	}
+
+	/**
+	 *
+	 * @param ply number of marks on the board, 0 to 9
+	 * @return the first id of the states of this ply
+	 */
+	public int plyStart(int ply) {
+		if (plyStart == null)
+			throw new IllegalStateException("This index is not ordered by ply");
+		return plyStart[ply];
+	}
+
+	/**
+	 *
+	 * @param ply number of marks on the board, 0 to 9
+	 * @return one past the last id of the states of this ply
+	 */
+	public int plyEnd(int ply) {
+		return plyStart(ply + 1);
+	}
+
+}
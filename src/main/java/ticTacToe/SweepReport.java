@@ -0,0 +1,48 @@
+package ticTacToe;
+
+/**
+ * What happened in one sweep over the states of a planning agent, e.g. one
+ * value iteration step of {@link ValueIterationAgent#iterate()}. Passed to
+ * {@link TrainingListener}s.
+ */
+public class SweepReport {
+
+	/**
+	 * the sweep number, starting at 1
+	 */
+	public final int sweep;
+
+	/**
+	 * the largest change of a state value in this sweep (the Bellman residual)
+	 */
+	public final double residual;
+
+	/**
+	 * the number of states whose value changed in this sweep
+	 */
+	public final int statesUpdated;
+
+	/**
+	 * time taken by this sweep, in nanoseconds
+	 */
+	public final long sweepNanos;
+
+	/**
+	 * time since training started, in nanoseconds
+	 */
+	public final long elapsedNanos;
+
+	public SweepReport(int sweep, double residual, int statesUpdated, long sweepNanos, long elapsedNanos) {
+		this.sweep = sweep;
+		this.residual = residual;
+		this.statesUpdated = statesUpdated;
+		this.sweepNanos = sweepNanos;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public String toString() {
+		return "Sweep " + sweep + ": residual = " + residual + ", states updated = " + statesUpdated + ", time = "
+				+ (sweepNanos / 1000) + "us (total " + (elapsedNanos / 1000) + "us)";
+	}
+
+}
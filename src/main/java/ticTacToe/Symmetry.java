@@ -0,0 +1,107 @@
+package ticTacToe;
+
+/**
+ * The eight symmetries of the 3x3 board (the dihedral group): the identity,
+ * three rotations and four reflections. Each is numbered 0 to 7 and acts on cell
+ * indices (3*i+j) and on occupancy masks through precomputed tables.
+ *
+ * Tic-Tac-Toe positions related by a symmetry have the same value, so tables
+ * can store one entry per orbit: see {@link Game#canonical()}.
+ */
+public class Symmetry {
+
+	/**
+	 * number of symmetries
+	 */
+	public static final int COUNT = 8;
+
+	/**
+	 * the identity symmetry
+	 */
+	public static final int IDENTITY = 0;
+
+	/**
+	 * CELLS[t][c] is the cell that cell c is moved to by symmetry t
+	 */
+	private static final int[][] CELLS = new int[COUNT][9];
+
+	/**
+	 * MASKS[t][m] is the occupancy mask m after applying symmetry t
+	 */
+	private static final int[][] MASKS = new int[COUNT][512];
+
+	/**
+	 * INVERSE[t] is the symmetry that undoes t
+	 */
+	private static final int[] INVERSE = new int[COUNT];
+
+	static {
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++) {
+				int c = 3 * i + j;
+				CELLS[0][c] = 3 * i + j; // identity
+				CELLS[1][c] = 3 * j + (2 - i); // rotate 90
+				CELLS[2][c] = 3 * (2 - i) + (2 - j); // rotate 180
+				CELLS[3][c] = 3 * (2 - j) + i; // rotate 270
+				CELLS[4][c] = 3 * i + (2 - j); // mirror left/right
+				CELLS[5][c] = 3 * (2 - i) + j; // mirror top/bottom
+				CELLS[6][c] = 3 * j + i; // main diagonal
+				CELLS[7][c] = 3 * (2 - j) + (2 - i); // anti-diagonal
+			}
+
+		for (int t = 0; t < COUNT; t++) {
+			for (int m = 0; m < 512; m++)
+				for (int c = 0; c < 9; c++)
+					if ((m & (1 << c)) != 0)
+						MASKS[t][m] |= 1 << CELLS[t][c];
+
+			for (int u = 0; u < COUNT; u++)
+				if (CELLS[u][CELLS[t][1]] == 1 && CELLS[u][CELLS[t][3]] == 3)
+					INVERSE[t] = u;
+		}
+	}
+
+	private Symmetry() {
+	}
+
+	/**
+	 *
+	 * @param t    a symmetry, 0 to 7
+	 * @param cell a cell index, 3*i+j
+	 * @return the cell that {@code cell} is moved to by {@code t}
+	 */
+	public static int cell(int t, int cell) {
+		return CELLS[t][cell];
+	}
+
+	/**
+	 *
+	 * @param t    a symmetry, 0 to 7
+	 * @param mask a 9-bit occupancy mask
+	 * @return the mask after applying {@code t}
+	 */
+	public static int mask(int t, int mask) {
+		return MASKS[t][mask];
+	}
+
+	/**
+	 *
+	 * @param t a symmetry, 0 to 7
+	 * @return the symmetry that undoes {@code t}
+	 */
+	public static int inverse(int t) {
+		return INVERSE[t];
+	}
+
+	/**
+	 *
+	 * @param t a symmetry, 0 to 7
+	 * @param m a move
+	 * @return the same player's move in the cell {@code m}'s cell is moved to by
+	 *         {@code t}
+	 */
+	public static Move move(int t, Move m) {
+		return Move.of(m.who, CELLS[t][m.cell]);
+	}
+
+}
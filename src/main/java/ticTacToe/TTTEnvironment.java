@@ -60,7 +60,7 @@ public class TTTEnvironment {
 	public List<Move> getPossibleMoves()
 	{
 		List<Move> moves=new ArrayList<Move>();
-		if (game.whoseTurn.getName()!='X')
+		if (game.getTurn()!='X')
 			return moves;
 		
 		return game.getPossibleMoves();
@@ -86,13 +86,16 @@ public class TTTEnvironment {
 			System.out.println("Executing move in terminal state. Returning null.");
 			return null;
 		}
-		else if (m.who.getName()!='X')
+		else if (m.who!='X')
 		{
 			System.out.println("Trying to executing O move - the RL agent must always play as X. Returning null Outcome object.");
 			return null;
 		}
 		
-		Game prev=this.game.clone();
+		//the shared registry game is an immutable snapshot of the current state
+		Game prev=GameStateRegistry.get(this.game.hashCode());
+		if (prev==null)
+			prev=this.game.clone();
 		
 		game.executeMove(m);
 		
@@ -137,11 +140,11 @@ public class TTTEnvironment {
 	
 	
 	/**
-	 * Resets current game state to a new game state (empty board)
+	 * Resets current game state to a new game state (empty board), against the same opponent
 	 */
 	public void reset()
 	{
-		this.game=new Game(new Agent(), new RandomAgent());
+		this.game=new Game(new Agent(), game.o);
 	}
 	
 	
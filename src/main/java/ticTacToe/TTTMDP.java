@@ -54,11 +54,11 @@ public class TTTMDP {
 	 * @return
 	 */
 	public List<TransitionProb> generateTransitions(Game g, Move m) {
-		if (g.whoseTurn.getName() != m.who.getName())
+		if (g.getTurn() != m.who)
 			throw new IllegalArgumentException(
-					"It's not " + m.who.getName() + "'s turn in game. This shouldn't happen!");
+					"It's not " + m.who + "'s turn in game. This shouldn't happen!");
 
-		if (m.who.getName() == 'O') {
+		if (m.who == 'O') {
 			throw new IllegalStateException(
 					"Value Iteration Agent is playing O. This will lead to unexpected results. It shouldn't happen.");
 		}
@@ -100,8 +100,10 @@ public class TTTMDP {
 		// places.
 		// we generate simulate all these, and associate them with equal probability
 
-		List<Game> nextPossibleStates = intermediate.getAllSuccessorGames();
-		for (Game game : nextPossibleStates) {
+		int empty = intermediate.getEmptyCells();
+		double prob = (double) 1 / Integer.bitCount(empty);
+		for (; empty != 0; empty &= empty - 1) {
+			Game game = intermediate.getSuccessor(Integer.numberOfTrailingZeros(empty));
 			double reward;
 			if (game.getState() == Game.O_WON) {
 				reward = this.loseReward;
@@ -115,7 +117,6 @@ public class TTTMDP {
 			}
 
 			Outcome o = new Outcome(g, m, reward, game);
-			double prob = (double) 1 / nextPossibleStates.size();
 
 			TransitionProb transProb = new TransitionProb(o, prob);
 			result.add(transProb);
@@ -126,6 +127,47 @@ public class TTTMDP {
 
 	}
 
+	/**
+	 * 
+	 * @param gameState the {@link Game#getState()} of the game a transition leads
+	 *                  to
+	 * @return the reward of the transition: the reward for X winning, O winning,
+	 *         a draw, or the living reward if the game goes on
+	 */
+	double rewardFor(int gameState) {
+		switch (gameState) {
+		case Game.X_WON:
+			return winReward;
+		case Game.O_WON:
+			return loseReward;
+		case Game.DRAW:
+			return drawReward;
+		default:
+			return livingReward;
+		}
+	}
+
+	/**
+	 * Compiles this MDP over the canonical states of X (see
+	 * {@link StateIndex#of(char, boolean)}), for planners that do many backups.
+	 * The model is a snapshot: changing the rewards afterwards doesn't change it.
+	 * 
+	 * @return the compiled model
+	 */
+	public CompiledMDP compile() {
+		return compile(StateIndex.of('X', true));
+	}
+
+	/**
+	 * Compiles this MDP over {@code states}.
+	 * 
+	 * @param states X's states: every successor must be in the index
+	 * @return the compiled model
+	 */
+	public CompiledMDP compile(StateIndex states) {
+		return new CompiledMDP(this, states);
+	}
+
 	public boolean isTerminal(Game g) {
 		return g.isTerminal();
 	}
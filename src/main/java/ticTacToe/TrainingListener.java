@@ -0,0 +1,16 @@
+package ticTacToe;
+
+/**
+ * Receives progress reports from a planning agent while it trains, e.g. to log
+ * or plot convergence. See {@link ValueIterationAgent#addTrainingListener}.
+ */
+public interface TrainingListener {
+
+	/**
+	 * Called after every sweep over the states.
+	 *
+	 * @param report what happened in the sweep
+	 */
+	void sweepDone(SweepReport report);
+
+}
@@ -0,0 +1,135 @@
+package ticTacToe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue of transitions, for many producers and one
+ * consumer. A transition is stored as a packed {@code long} (see
+ * {@link #pack}) and its reward, in primitive arrays, so nothing is allocated
+ * per transition.
+ *
+ * The slots form a ring. Every slot has a sequence number that says whose turn
+ * it is: a producer claims the next slot by moving the tail with a
+ * compare-and-set, writes the transition, and then publishes it by advancing
+ * the slot's sequence; the consumer only reads a slot once it is published,
+ * and hands it back to the producers by advancing its sequence again.
+ */
+class TransitionQueue {
+
+	final int capacity;
+	private final int mask;
+
+	/**
+	 * slot -> packed transition, and its reward
+	 */
+	private final long[] transitions;
+	private final double[] rewards;
+
+	/**
+	 * slot -> {@code t} if free for the {@code t}-th offer, {@code t+1} once the
+	 * {@code t}-th offer has been written into it
+	 */
+	private final AtomicLongArray sequence;
+
+	/**
+	 * the number of slots claimed by producers
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * the number of transitions taken by the consumer; only the consumer uses it
+	 */
+	private long head;
+
+	/**
+	 *
+	 * @param capacity the maximum number of transitions in the queue, rounded up
+	 *                 to a power of 2
+	 */
+	TransitionQueue(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Bad capacity: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		this.capacity = (size < capacity) ? size << 1 : size;
+		this.mask = this.capacity - 1;
+		this.transitions = new long[this.capacity];
+		this.rewards = new double[this.capacity];
+		this.sequence = new AtomicLongArray(this.capacity);
+		for (int i = 0; i < this.capacity; i++)
+			sequence.set(i, i);
+	}
+
+	/**
+	 * Packs the transition {@code (s, cell, next)}.
+	 *
+	 * @param s    a state id, below 2^27
+	 * @param cell the cell played, 0 to 8
+	 * @param next the id of the next state, below 2^27
+	 * @return the packed transition
+	 */
+	static long pack(int s, int cell, int next) {
+		return ((long) s << 31) | ((long) next << 4) | cell;
+	}
+
+	static int state(long transition) {
+		return (int) (transition >>> 31);
+	}
+
+	static int cell(long transition) {
+		return (int) (transition & 0xF);
+	}
+
+	static int next(long transition) {
+		return (int) ((transition >>> 4) & 0x7FFFFFF);
+	}
+
+	/**
+	 * Adds a transition, if there is room. Can be called from any thread.
+	 *
+	 * @param transition a packed transition
+	 * @param reward
+	 * @return false if the queue is full
+	 */
+	boolean offer(long transition, double reward) {
+		while (true) {
+			long t = tail.get();
+			int slot = (int) (t & mask);
+			long seq = sequence.get(slot);
+			if (seq < t)
+				return false; // the consumer hasn't taken this slot's last transition yet
+			if (seq == t && tail.compareAndSet(t, t + 1)) {
+				transitions[slot] = transition;
+				rewards[slot] = reward;
+				sequence.lazySet(slot, t + 1);
+				return true;
+			}
+			// another producer claimed the slot first: try the next one
+		}
+	}
+
+	/**
+	 * Takes up to {@code max} transitions, oldest first. Must only be called from
+	 * the consumer thread.
+	 *
+	 * @param transitions receives the packed transitions
+	 * @param rewards     receives their rewards
+	 * @param max
+	 * @return the number of transitions taken; 0 if the queue is empty
+	 */
+	int drain(long[] transitions, double[] rewards, int max) {
+		int n = 0;
+		while (n < max) {
+			int slot = (int) (head & mask);
+			if (sequence.get(slot) != head + 1)
+				break; // not published yet
+			transitions[n] = this.transitions[slot];
+			rewards[n] = this.rewards[slot];
+			n++;
+			sequence.lazySet(slot, head + capacity);
+			head++;
+		}
+		return n;
+	}
+
+}
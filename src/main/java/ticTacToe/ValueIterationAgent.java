@@ -1,8 +1,9 @@
 package ticTacToe;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A Value Iteration Agent, only very partially implemented. The methods to
@@ -24,9 +25,16 @@ import java.util.Map;
 public class ValueIterationAgent extends Agent {
 
 	/**
-	 * This map is used to store the values of states
+	 * The states the agent plans over: all valid games where it is X's turn, or
+	 * it's terminal. Symmetric games share one state, see {@link Game#canonical()}.
 	 */
-	Map<Game, Double> valueFunction = new HashMap<Game, Double>();
+	StateIndex states;
+
+	/**
+	 * This array is used to store the values of states, indexed by their id in
+	 * {@link #states}
+	 */
+	double[] valueFunction;
 
 	/**
 	 * the discount factor
@@ -39,10 +47,79 @@ public class ValueIterationAgent extends Agent {
 	TTTMDP mdp = new TTTMDP();
 
 	/**
-	 * the number of iterations to perform - feel free to change this/try out
-	 * different numbers of iterations
+	 * {@link #mdp} compiled over {@link #states}, see {@link TTTMDP#compile()}.
+	 * Built by {@link #iterate()}.
+	 */
+	CompiledMDP model;
+
+	/**
+	 * The best move in every state, as a cell indexed by state id (-1 for terminal
+	 * states). It is recorded by the backups of {@link #iterate()}, so
+	 * {@link #train()} needs no second pass over the model to extract the policy.
+	 */
+	byte[] greedy;
+
+	/**
+	 * If true, {@link #iterate()} also keeps the q-value of every (state, move)
+	 * pair in {@link #qValues}, see {@link #getQValue(Game, Move)}.
+	 */
+	boolean keepQValues = false;
+
+	/**
+	 * action id in {@link #model} -> q-value from the last backup of its state, or
+	 * null if q-values are not kept
+	 */
+	double[] qValues;
+
+	/**
+	 * the maximum number of iterations (sweeps) to perform - feel free to change
+	 * this/try out different numbers of iterations
+	 */
+	int k = 100;
+
+	/**
+	 * Value iteration stops once no state value changes by more than this in a
+	 * sweep, i.e. once the Bellman residual is at most epsilon.
+	 */
+	double epsilon = 1e-6;
+
+	/**
+	 * the number of sweeps done, the residual of the last one, and the number of
+	 * state backups done, set by {@link #iterate()}
+	 */
+	int sweeps;
+	double residual;
+	long backups;
+
+	/**
+	 * the number of times the best move of a state changed from one move to
+	 * another during the last {@link #iterate()} or {@link #replan(MDPConfig)}
+	 */
+	int policyChanges;
+
+	/**
+	 * The number of threads {@link #iterate()} uses. With 1, values are updated
+	 * in place, one state after the other. With more, each sweep is a synchronous
+	 * update computed on a {@link ForkJoinPool}, see {@link ParallelSweep}.
+	 */
+	int parallelism = 1;
+
+	/**
+	 * If true, {@link #train()} solves the MDP exactly with the
+	 * {@link RetrogradeSolver} instead of iterating.
+	 */
+	boolean retrograde = false;
+
+	/**
+	 * If true, {@link #iterate()} uses {@link PrioritizedSweeping} instead of full
+	 * sweeps.
+	 */
+	boolean prioritized = false;
+
+	/**
+	 * notified after every sweep of {@link #iterate()}
 	 */
-	int k = 10;
+	final List<TrainingListener> listeners = new ArrayList<TrainingListener>();
 
 	/**
 	 * This constructor trains the agent offline first and sets its policy
@@ -74,33 +151,158 @@ public class ValueIterationAgent extends Agent {
 	}
 
 	/**
-	 * Initialises the {@link ValueIterationAgent#valueFunction} map, and sets the
-	 * initial value of all states to 0 (V0 from the lectures). Uses
-	 * {@link Game#inverseHash} and {@link Game#generateAllValidGames(char)} to do
-	 * this.
+	 * Initialises the {@link ValueIterationAgent#valueFunction} array, and sets the
+	 * initial value of all states to 0 (V0 from the lectures). Uses the shared
+	 * canonical {@link StateIndex} of X's states, built from
+	 * {@link Game#generateAllValidGames(char)}, to do this.
 	 * 
 	 */
 	public void initValues() {
 
-		List<Game> allGames = Game.generateAllValidGames('X');// all valid games where it is X's turn, or it's terminal.
-		for (Game g : allGames)
-			this.valueFunction.put(g, 0.0);
+		// all valid games where it is X's turn, or it's terminal; one per symmetry orbit.
+		this.states = StateIndex.of('X', true);
+		this.valueFunction = new double[states.size()];
 
 	}
 
+	/**
+	 * Sets the MDP parameters but does not train the agent: call {@link #train()}
+	 * when ready.
+	 * 
+	 * @param discountFactor
+	 * @param winReward
+	 * @param loseReward
+	 * @param livingReward
+	 * @param drawReward
+	 */
 	public ValueIterationAgent(double discountFactor, double winReward, double loseReward, double livingReward,
 			double drawReward) {
 		this.discount = discountFactor;
 		mdp = new TTTMDP(winReward, loseReward, livingReward, drawReward);
+		initValues();
+	}
+
+	/**
+	 * Sets the convergence threshold and the maximum number of sweeps used by
+	 * {@link #iterate()}.
+	 * 
+	 * @param epsilon   stop when the Bellman residual is at most this
+	 * @param maxSweeps stop after this many sweeps anyway
+	 */
+	public void setConvergence(double epsilon, int maxSweeps) {
+		if (maxSweeps < 1)
+			throw new IllegalArgumentException("At least one sweep is needed");
+		this.epsilon = epsilon;
+		this.k = maxSweeps;
+	}
+
+	/**
+	 * Sets the number of threads used by {@link #iterate()}. With one, values are
+	 * updated in place (Gauss-Seidel); with more, every state is updated from the
+	 * values of the previous sweep (Jacobi). The states are ordered by ply and a
+	 * state's successors have higher ids, so the in place sweep, going up through
+	 * the ids, only reads values it hasn't updated yet: the two give the same
+	 * values after every sweep, even when stopped early by the sweep cap of
+	 * {@link #setConvergence}. This would no longer hold with another state order.
+	 * 
+	 * @param threads 1 or more
+	 */
+	public void setParallelism(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		this.parallelism = threads;
+	}
+
+	/**
+	 * Chooses the engine used by {@link #train()}: value iteration (the default),
+	 * or a single backwards pass of the {@link RetrogradeSolver}, which gives the
+	 * exact values and policy.
+	 * 
+	 * @param retrograde
+	 */
+	public void setRetrograde(boolean retrograde) {
+		this.retrograde = retrograde;
+	}
+
+	/**
+	 * Makes {@link #iterate()} use {@link PrioritizedSweeping}: states are backed
+	 * up one at a time, largest Bellman error first, and only while their error
+	 * is larger than {@link #epsilon}, for at most {@link #k} times the number of
+	 * states backups.
+	 * 
+	 * @param prioritized
+	 */
+	public void setPrioritized(boolean prioritized) {
+		this.prioritized = prioritized;
+	}
+
+	/**
+	 * 
+	 * @param keep if true, training keeps the q-values for
+	 *             {@link #getQValue(Game, Move)}
+	 */
+	public void setKeepQValues(boolean keep) {
+		this.keepQValues = keep;
+	}
+
+	/**
+	 * 
+	 * @param g a game where it is X's turn
+	 * @param m a legal move in {@code g}
+	 * @return the q-value of {@code (g,m)} after training
+	 * @throws IllegalStateException if q-values were not kept, see
+	 *                               {@link #setKeepQValues(boolean)}
+	 */
+	public double getQValue(Game g, Move m) {
+		if (qValues == null)
+			throw new IllegalStateException("Q-values were not kept. Call setKeepQValues(true) before training.");
+		int s = states.indexOf(g);
+		int a = (s < 0) ? -1 : model.actionOf(s, states.isCanonical() ? g.toCanonical(m).cell : m.cell);
+		if (a < 0)
+			throw new IllegalArgumentException("No q-value for move " + m + " in game:\n" + g);
+		return qValues[a];
+	}
+
+	/**
+	 * 
+	 * @param l notified after every sweep of value iteration
+	 */
+	public void addTrainingListener(TrainingListener l) {
+		listeners.add(l);
+	}
+
+	/**
+	 * 
+	 * @return the number of sweeps done by the last {@link #iterate()}
+	 */
+	public int getSweeps() {
+		return sweeps;
+	}
+
+	/**
+	 * 
+	 * @return the number of state backups done by the last {@link #iterate()}
+	 */
+	public long getBackups() {
+		return backups;
+	}
+
+	/**
+	 * 
+	 * @return the Bellman residual of the last sweep
+	 */
+	public double getResidual() {
+		return residual;
 	}
 
 	/**
 	 * 
 	 * 
-	 * /* Performs {@link #k} value iteration steps. After running this method, the
-	 * {@link ValueIterationAgent#valueFunction} map should contain the (current)
-	 * values of each reachable state. You should use the {@link TTTMDP} provided to
-	 * do this.
+	 * /* Performs value iteration steps until the Bellman residual is at most
+	 * {@link #epsilon}, or {@link #k} steps have been done. After running this
+	 * method, the {@link ValueIterationAgent#valueFunction} map should contain the
+	 * (current) values of each reachable state. You should use the {@link TTTMDP}
+	 * provided to do this.
 	 * 
 	 * References: GeeksforGeeks. (2016). Finding optimal move in Tic Tac Toe using
 	 * Minimax Algorithm in Game Theory. [online] Available at:
@@ -110,46 +312,165 @@ public class ValueIterationAgent extends Agent {
 	 * https://www.youtube.com/watch?v=trKjYdBASyQ [Accessed 27 Nov. 2023].
 	 */
 	public void iterate() {
+		// compile the transitions once; the sweeps then only read arrays
+		this.model = mdp.compile(states);
+		// the backups fill in the best moves as they go
+		this.greedy = new byte[states.size()];
+		Arrays.fill(greedy, (byte) -1);
+
+		runValueIteration();
+	}
+
+	/**
+	 * Runs value iteration on {@link #model}, with the engine chosen, starting from
+	 * the current {@link #valueFunction} and {@link #greedy} moves.
+	 */
+	private void runValueIteration() {
 		double totalReward; // Variable that stores the cumulative reward.
 		double maxQval; // Variable that store the maximum q-value for each state
 
+		this.qValues = keepQValues ? new double[model.numActions()] : null;
+		this.policyChanges = 0;
+
+		if (prioritized) {
+			iteratePrioritized();
+			return;
+		}
+		if (parallelism > 1) {
+			iterateInParallel();
+			return;
+		}
+
+		long start = System.nanoTime();
+		this.sweeps = 0;
+		this.backups = 0;
+
 		// The Expectimax Algortihm
-		for (int i = 0; i < k; i++) {
+		do {
+			long sweepStart = System.nanoTime();
+			this.residual = 0; // largest change of a value in this sweep
+			int updated = 0; // number of values changed in this sweep
 			// Iterates over all the states in the MDP
-			for (Game gameState : this.valueFunction.keySet()) {
+			for (int s = 0; s < states.size(); s++) {
 				// Skips if the current state is a terminal state
-				if (gameState.isTerminal()) {
+				if (model.isTerminal(s)) {
 					/*
 					 * Setting terminal state value to 0 to avoid later setting the terminal state
 					 * to a very low negative value as we are using -Integer.MAX_VALUE to find the
 					 * maximum.
 					 */
-					this.valueFunction.put(gameState, 0.0);
+					this.valueFunction[s] = 0.0;
+					this.greedy[s] = -1; // no move in a terminal state
 					continue; // move to the next game state
 				}
 				maxQval = -Integer.MAX_VALUE; // initializes the variable max to a very small negative value.
+				int bestAction = -1; // the move giving max
 				// Iterates over all the moves in the current state
-				for (Move move : gameState.getPossibleMoves()) {
-					totalReward = 0;
-					// Iterate over all possible outcomes for the current move
-					for (TransitionProb transitionProb : mdp.generateTransitions(gameState, move)) {
-						// Calculate the q-value for the current outcome
-						double qValue = transitionProb.prob * (transitionProb.outcome.localReward
-								+ (discount * this.valueFunction.get(transitionProb.outcome.sPrime)));
-						// Sum the q-values for each outcome
-						totalReward += qValue;
-					}
+				for (int a = model.actionStart[s]; a < model.actionStart[s + 1]; a++) {
+					// Sum of the q-values over all possible outcomes for the current move
+					totalReward = model.qValue(a, this.valueFunction, discount);
+					if (qValues != null)
+						qValues[a] = totalReward;
 					// Sets max to the sum value if the sum is bigger than the original max.
 					if (totalReward > maxQval) {
 						maxQval = totalReward;
+						bestAction = a;
 					}
 				}
-				// Update the value function for the current state with the new max
-				this.valueFunction.put(gameState, maxQval);
+				// Record the best move as we go: the last sweep leaves the policy behind
+				if (this.greedy[s] != model.actionCell[bestAction]) {
+					if (this.greedy[s] >= 0) // the first best move found is not a change
+						this.policyChanges++;
+					this.greedy[s] = model.actionCell[bestAction];
+				}
+				this.backups++;
+				// Track the residual before updating the value function for the current state
+				// with the new max
+				double change = Math.abs(maxQval - this.valueFunction[s]);
+				if (change > 0)
+					updated++;
+				if (change > residual)
+					residual = change;
+				this.valueFunction[s] = maxQval;
 			}
+			this.sweeps++;
+
+			reportSweep(updated, sweepStart, start);
+			// stop once the values have converged, or the sweep budget is spent
+		} while (residual > epsilon && sweeps < k);
+	}
+
+	/**
+	 * Does the work of {@link #iterate()} on {@link #parallelism} threads, with
+	 * synchronous sweeps: each sweep reads the values of the previous one from one
+	 * array and writes into a second, then the two are swapped.
+	 */
+	private void iterateInParallel() {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			ParallelSweep sweep = new ParallelSweep(model, discount, pool, greedy, qValues);
+			double[] in = this.valueFunction;
+			double[] out = new double[in.length];
+
+			int nonTerminal = 0;
+			for (int s = 0; s < states.size(); s++)
+				if (!model.isTerminal(s))
+					nonTerminal++;
+
+			long start = System.nanoTime();
+			this.sweeps = 0;
+			this.backups = 0;
+			do {
+				long sweepStart = System.nanoTime();
+				this.residual = sweep.sweep(in, out);
+				this.backups += nonTerminal;
+				this.policyChanges += sweep.policyChanges;
+				double[] swap = in;
+				in = out;
+				out = swap;
+				this.sweeps++;
+
+				reportSweep(sweep.statesUpdated, sweepStart, start);
+			} while (residual > epsilon && sweeps < k);
+
+			this.valueFunction = in;
+		} finally {
+			pool.shutdown();
 		}
 	}
 
+	/**
+	 * Does the work of {@link #iterate()} with {@link PrioritizedSweeping}. The
+	 * whole run is reported to the {@link #listeners} as a single sweep.
+	 */
+	private void iteratePrioritized() {
+		long start = System.nanoTime();
+		PrioritizedSweeping sweeping = new PrioritizedSweeping(model);
+		this.backups = sweeping.run(valueFunction, greedy, qValues, discount, epsilon, k * states.size());
+		this.residual = sweeping.getResidual();
+		this.policyChanges = sweeping.policyChanges;
+		this.sweeps = 1;
+
+		reportSweep(sweeping.statesUpdated, start, start);
+	}
+
+	/**
+	 * Sends a {@link SweepReport} of the sweep just done to the
+	 * {@link #listeners}.
+	 * 
+	 * @param updated    number of values changed
+	 * @param sweepStart {@link System#nanoTime()} at the start of the sweep
+	 * @param start      {@link System#nanoTime()} at the start of training
+	 */
+	private void reportSweep(int updated, long sweepStart, long start) {
+		if (listeners.isEmpty())
+			return;
+		long now = System.nanoTime();
+		SweepReport report = new SweepReport(sweeps, residual, updated, now - sweepStart, now - start);
+		for (TrainingListener l : listeners)
+			l.sweepDone(report);
+	}
+
 	/**
 	 * This method should be run AFTER the train method to extract a policy
 	 * according to {@link ValueIterationAgent#valueFunction} You will need to do a
@@ -170,59 +491,54 @@ public class ValueIterationAgent extends Agent {
 	 *         [Accessed 27 Nov. 2023].
 	 */
 	public Policy extractPolicy() {
+		if (model == null)
+			this.model = mdp.compile(states);
+
 		/*
-		 * Creating a new instance of the Policy class to store the extracted policy.
-		 * Which will be used for decision-making when the agent learns the optimal
-		 * moves.
+		 * The cell to play in each state, which will be used for decision-making when
+		 * the agent learns the optimal moves. -1 for terminal states.
 		 */
-		Policy policy = new Policy();
+		byte[] cells = new byte[states.size()];
+		Arrays.fill(cells, (byte) -1);
 
 		// Variables to track the move that gives the maximum Q-value
-		// The optimal move will be taken based on the q-value, It starts as null and
+		// The optimal move will be taken based on the q-value, It starts as -1 and
 		// gets updated with each iteration as the agent finds moves with higher
 		// Q-values
-		Move optimalMove = null; // Variable of instance Move
+		int optimalAction = -1;
 		// Variables that will keep track of the rewards the agent can recieve.
 		double totalReward; // Counter to add up all rewards
 		double maxCumulativeReward; // Stores the highest total reward that the agent has come across.
 
 		// For loop to iterate over all states
-		for (Game currentGameState : this.valueFunction.keySet()) {
+		for (int s = 0; s < states.size(); s++) {
 			// if the current state is a terminal state then continue.
-			if (currentGameState.isTerminal()) {
+			if (model.isTerminal(s)) {
 				/*
 				 * Setting terminal state value to 0 to avoid later setting the terminal state
 				 * to a very low negative value as we are using -Integer.MAX_VALUE to find the
 				 * maximum.
 				 */
-				this.valueFunction.put(currentGameState, 0.0);
+				this.valueFunction[s] = 0.0;
 				continue;
 			}
 			// initializes the variable max to a very small negative value.
 			maxCumulativeReward = -Integer.MAX_VALUE;
 			// for loop that iterate over all possible moves for the current state
-			for (Move possibleMove : currentGameState.getPossibleMoves()) {
-				// set cumulative reward for the current move to 0
-				totalReward = 0;
-				// Iterate over all possible outcomes for the current move
-				for (TransitionProb transitionProb : mdp.generateTransitions(currentGameState, possibleMove)) {
-					// Calculate the q-value for the current outcome
-					double qValue = transitionProb.prob * (transitionProb.outcome.localReward
-							+ (discount * this.valueFunction.get(transitionProb.outcome.sPrime)));
-					// Accumulate q-values for each outcome
-					totalReward += qValue;
-				}
+			for (int a = model.actionStart[s]; a < model.actionStart[s + 1]; a++) {
+				// q-value of the current move: summed over all its possible outcomes
+				totalReward = model.qValue(a, this.valueFunction, discount);
 				// Sets maxCumulativeReward to the value of total rewards if it is greater than
 				// the highest cumalative reward known till now
 				if (totalReward > maxCumulativeReward) {
 					maxCumulativeReward = totalReward;
-					optimalMove = possibleMove; // holds the move with the highest reward
+					optimalAction = a; // holds the move with the highest reward
 				}
 			}
-			policy.policy.put(currentGameState, optimalMove); // Set the move associated with the current state to
-																// maxMove in the policy
+			cells[s] = model.actionCell[optimalAction]; // Set the move associated with the current state to
+														// maxMove in the policy
 		}
-		return policy;
+		return new IndexedPolicy(states, cells);
 	}
 
 	/**
@@ -231,17 +547,24 @@ public class ValueIterationAgent extends Agent {
 	 * {@link ValueIterationAgent#iterate}.
 	 */
 	public void train() {
+		if (retrograde) {
+			this.model = mdp.compile(states);
+			this.greedy = null;
+			solveRetrograde();
+			return;
+		}
 		/**
 		 * First run value iteration
 		 */
 		this.iterate();
 		/**
-		 * now extract policy from the values in
-		 * {@link ValueIterationAgent#valueFunction} and set the agent's policy
+		 * now set the agent's policy: the best moves were recorded by the backups of
+		 * the last sweep, so there's no need for a separate {@link #extractPolicy()}
+		 * pass
 		 * 
 		 */
 
-		super.policy = extractPolicy();
+		super.policy = new IndexedPolicy(states, greedy);
 
 		if (this.policy == null) {
 			System.out.println("Unimplemented methods! First implement the iterate() & extractPolicy() methods");
@@ -250,6 +573,74 @@ public class ValueIterationAgent extends Agent {
 
 	}
 
+	/**
+	 * Solves {@link #model} with the {@link RetrogradeSolver}: one exact backup per
+	 * state, from full boards back to the empty board. Sets the values and the
+	 * policy.
+	 */
+	private void solveRetrograde() {
+		this.qValues = keepQValues ? new double[model.numActions()] : null;
+		RetrogradeSolver.Solution solution = RetrogradeSolver.solve(model, discount, qValues);
+		this.policyChanges = 0;
+		for (int s = 0; s < states.size(); s++)
+			if (greedy != null && greedy[s] >= 0 && greedy[s] != solution.policy[s])
+				policyChanges++;
+		this.valueFunction = solution.values;
+		this.greedy = solution.policy;
+		this.sweeps = 1;
+		this.backups = states.size();
+		this.residual = 0;
+		super.policy = new IndexedPolicy(states, greedy);
+	}
+
+	/**
+	 * An untrained agent for {@code params}, with the engine and convergence
+	 * settings of {@code settings}.
+	 */
+	private ValueIterationAgent(ValueIterationAgent settings, MDPConfig params) {
+		this(params.discount, params.winReward, params.loseReward, params.livingReward, params.drawReward);
+		this.epsilon = settings.epsilon;
+		this.k = settings.k;
+		this.parallelism = settings.parallelism;
+		this.retrograde = settings.retrograde;
+		this.prioritized = settings.prioritized;
+	}
+
+	/**
+	 * Changes the discount and rewards, and plans again for them, warm started:
+	 * the compiled model is reused with the new rewards, and value iteration
+	 * starts from the current values and policy instead of from 0. Small changes
+	 * to the parameters then need fewer sweeps than training from scratch.
+	 * 
+	 * To measure the saving, the new parameters are also solved from scratch, by
+	 * a separate agent with the same engine.
+	 * 
+	 * @param params the new discount and rewards
+	 * @return the work of the replan, next to that of the solve from scratch
+	 * @throws IllegalStateException if the agent hasn't been trained yet
+	 */
+	public ReplanReport replan(MDPConfig params) {
+		if (model == null)
+			throw new IllegalStateException("The agent must be trained before it can replan");
+
+		ValueIterationAgent cold = new ValueIterationAgent(this, params);
+		cold.train();
+
+		this.discount = params.discount;
+		this.mdp = params.toMDP();
+		this.model = model.withRewards(mdp);
+
+		if (retrograde) {
+			solveRetrograde();
+		} else {
+			// the current policy keeps its own copy of the moves
+			this.greedy = greedy.clone();
+			runValueIteration();
+			super.policy = new IndexedPolicy(states, greedy);
+		}
+		return new ReplanReport(cold.sweeps, sweeps, cold.policyChanges, policyChanges);
+	}
+
 	public static void main(String a[]) throws IllegalMoveException {
 		// Test method to play the agent against a human agent.
 		ValueIterationAgent agent = new ValueIterationAgent();
@@ -0,0 +1,35 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestBatchSolver {
+
+	@Test
+	public void testSameAsOneSolveEach() {
+		List<MDPConfig> configs = Arrays.asList(new MDPConfig(0.9, 10, -10, -1, 0), new MDPConfig(0.5, 1, -1, 0, 0),
+				new MDPConfig(0.99, 10, -20, -0.5, 3), new MDPConfig(1, 0, 0, 0, 0), new MDPConfig(0.9, -1, 1, 2, -3));
+		List<RetrogradeSolver.Solution> solutions = new BatchSolver().solve(configs);
+		assertEquals(configs.size(), solutions.size());
+
+		for (int j = 0; j < configs.size(); j++) {
+			MDPConfig config = configs.get(j);
+			RetrogradeSolver.Solution expected = RetrogradeSolver.solve(config.toMDP().compile(), config.discount);
+			RetrogradeSolver.Solution actual = solutions.get(j);
+			for (int s = 0; s < expected.values.length; s++) {
+				assertEquals(config + ", state " + s, expected.values[s], actual.values[s], 0);
+				assertEquals(config + ", state " + s, expected.policy[s], actual.policy[s]);
+			}
+		}
+	}
+
+	@Test
+	public void testNoConfigs() {
+		assertEquals(0, new BatchSolver().solve(Arrays.<MDPConfig>asList()).size());
+	}
+
+}
@@ -0,0 +1,74 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestCompiledMDP {
+
+	@Test
+	public void testSizes() {
+		CompiledMDP model = new TTTMDP().compile();
+		assertSame(StateIndex.of('X', true), model.getStates());
+		assertEquals(903, model.numStates());
+		assertEquals(2270, model.numActions());
+		assertEquals(6444, model.numTransitions());
+	}
+
+	@Test
+	public void testOffsets() {
+		CompiledMDP model = new TTTMDP().compile();
+		StateIndex states = model.getStates();
+		assertEquals(model.numStates() + 1, model.actionStart.length);
+		assertEquals(0, model.actionStart[0]);
+		assertEquals(model.numActions(), model.actionStart[model.numStates()]);
+		assertEquals(model.numActions() + 1, model.transitionStart.length);
+		assertEquals(0, model.transitionStart[0]);
+		assertEquals(model.numTransitions(), model.transitionStart[model.numActions()]);
+
+		for (int s = 0; s < model.numStates(); s++) {
+			Game g = states.getGame(s);
+			assertTrue(model.actionStart[s] <= model.actionStart[s + 1]);
+			assertEquals(g.isTerminal(), model.isTerminal(s));
+			// one action per empty cell of a game that isn't over, in cell order
+			int empty = g.isTerminal() ? 0 : g.getEmptyCells();
+			assertEquals(Integer.bitCount(empty), model.actionStart[s + 1] - model.actionStart[s]);
+			for (int a = model.actionStart[s]; a < model.actionStart[s + 1]; a++) {
+				int cell = Integer.numberOfTrailingZeros(empty);
+				empty &= empty - 1;
+				assertEquals(cell, model.actionCell[a]);
+				assertEquals(a, model.actionOf(s, cell));
+
+				assertTrue(model.transitionStart[a] < model.transitionStart[a + 1]);
+				double total = 0;
+				for (int t = model.transitionStart[a]; t < model.transitionStart[a + 1]; t++) {
+					// a move adds a mark, so the ply ordered ids only go up
+					assertTrue(model.next[t] > s);
+					assertTrue(model.prob[t] > 0);
+					total += model.prob[t];
+				}
+				assertEquals(1, total, 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testWithRewards() {
+		TTTMDP mdp = new TTTMDP(5, -5, -1, 2);
+		CompiledMDP model = new TTTMDP().compile();
+		CompiledMDP rewarded = model.withRewards(mdp);
+		assertSame(model.next, rewarded.next);
+		assertSame(model.prob, rewarded.prob);
+		assertSame(model.transitionStart, rewarded.transitionStart);
+
+		CompiledMDP compiled = mdp.compile();
+		assertEquals(compiled.numTransitions(), rewarded.numTransitions());
+		for (int t = 0; t < rewarded.numTransitions(); t++) {
+			assertEquals(compiled.reward[t], rewarded.reward[t], 0);
+			assertEquals(mdp.rewardFor(rewarded.outcome[t]), rewarded.reward[t], 0);
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestGamePushPop {
+
+	/**
+	 * Walks the whole game tree on one game with push and pop: every pop must
+	 * give back the board, turn, state and hash from before the push.
+	 */
+	@Test
+	public void testPopRestores() {
+		Game g = new Game();
+		// the number of distinct complete games
+		assertEquals(255168, walk(g));
+		assertEquals(0, g.getHistorySize());
+		assertEquals(new Game().hashCode(), g.hashCode());
+	}
+
+	private int walk(Game g) {
+		if (g.isTerminal())
+			return 1;
+		int games = 0;
+		int xMask = g.xMask;
+		int oMask = g.oMask;
+		int hash = g.hashCode();
+		int state = g.getState();
+		char turn = g.getTurn();
+		for (int empty = g.getEmptyCells(); empty != 0; empty &= empty - 1) {
+			int cell = Integer.numberOfTrailingZeros(empty);
+			g.push(cell);
+			// the hash is kept up to date incrementally
+			assertEquals(Game.hashOf(g.xMask, g.oMask, (g.getTurn() == 'X') ? 0 : 1), g.hashCode());
+			games += walk(g);
+
+			Move m = g.pop();
+			assertEquals(turn, m.who);
+			assertEquals(cell, m.cell);
+			assertEquals(xMask, g.xMask);
+			assertEquals(oMask, g.oMask);
+			assertEquals(hash, g.hashCode());
+			assertEquals(state, g.getState());
+			assertEquals(turn, g.getTurn());
+		}
+		return games;
+	}
+
+	@Test
+	public void testPushMove() throws IllegalMoveException {
+		Game g = new Game();
+		g.push(Move.of('X', 4));
+		g.push(Move.of('O', 0));
+		assertEquals(2, g.getHistorySize());
+		assertEquals(Move.of('O', 0), g.pop());
+		assertEquals(Move.of('X', 4), g.pop());
+		assertEquals(new Game(), g);
+	}
+
+	@Test
+	public void testBadPushAndPop() {
+		Game g = new Game();
+		try {
+			g.pop();
+			assertTrue("nothing to pop", false);
+		} catch (IllegalStateException e) {
+		}
+
+		g.push(4);
+		try {
+			g.push(4);
+			assertTrue("the cell is taken", false);
+		} catch (IllegalArgumentException e) {
+		}
+		assertEquals(1, g.getHistorySize());
+	}
+
+}
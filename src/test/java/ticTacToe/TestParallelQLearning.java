@@ -0,0 +1,112 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class TestParallelQLearning {
+
+	static final Supplier<Agent> RANDOM = new Supplier<Agent>() {
+		public Agent get() {
+			return new RandomAgent();
+		}
+	};
+
+	@Test
+	public void testEpisodesAreSplitEvenly() {
+		ParallelQLearning learning = new ParallelQLearning(RANDOM, 0.1, 0.9, 0.1, 3);
+		learning.setMergeInterval(2);
+		learning.train(10);
+		int[] episodes = learning.getEpisodesPerThread();
+		assertEquals(3, episodes.length);
+		assertEquals(4, episodes[0]);
+		assertEquals(3, episodes[1]);
+		assertEquals(3, episodes[2]);
+	}
+
+	@Test
+	public void testRounds() {
+		// one merge per mergeInterval episodes of the busiest thread, rounded up
+		int[][] cases = { { 10, 3, 2, 2 }, { 10, 3, 3, 2 }, { 10, 3, 1, 4 }, { 10, 3, 1000, 1 }, { 12, 4, 3, 1 },
+				{ 2, 4, 1, 1 } };
+		for (int[] c : cases) {
+			ParallelQLearning learning = new ParallelQLearning(RANDOM, 0.1, 0.9, 0.1, c[1]);
+			learning.setMergeInterval(c[2]);
+			learning.train(c[0]);
+			assertEquals("episodes " + c[0] + ", threads " + c[1] + ", interval " + c[2], c[3], learning.getRounds());
+		}
+	}
+
+	@Test
+	public void testAverage() {
+		QTable[] tables = { new QTable(), new QTable() };
+		QTable merged = new QTable(tables[0].getStates());
+		int s = 0;
+		int a = Integer.numberOfTrailingZeros(merged.getMoves(s));
+		tables[0].update(s, a, 1);
+		tables[1].update(s, a, 4);
+		merged.update(s, a + 1, 7);
+		int[][] visits = new int[2][tables[0].values.length];
+		visits[0][9 * s + a] = 3;
+
+		ParallelQLearning.merge(ParallelQLearning.Merge.AVERAGE, tables, visits, merged);
+		// every q-value is averaged, visited or not
+		assertEquals(2.5, merged.get(s, a), 1e-12);
+		assertEquals(0, merged.get(s, a + 1), 0);
+		assertEquals(a, merged.argmax(s));
+		assertEquals(2.5, merged.max(s), 1e-12);
+	}
+
+	@Test
+	public void testVisitWeighted() {
+		QTable[] tables = { new QTable(), new QTable() };
+		QTable merged = new QTable(tables[0].getStates());
+		int s = 0;
+		int a = Integer.numberOfTrailingZeros(merged.getMoves(s));
+		int b = Integer.numberOfTrailingZeros(merged.getMoves(s) & ~(1 << a));
+		tables[0].update(s, a, 1);
+		tables[1].update(s, a, 4);
+		tables[0].update(s, b, -1);
+		merged.update(s, b, 7);
+		int[][] visits = new int[2][tables[0].values.length];
+		visits[0][9 * s + a] = 3;
+		visits[1][9 * s + a] = 1;
+
+		ParallelQLearning.merge(ParallelQLearning.Merge.VISIT_WEIGHTED, tables, visits, merged);
+		assertEquals((3 * 1 + 1 * 4) / 4.0, merged.get(s, a), 1e-12);
+		// no shard visited b: it keeps its merged value
+		assertEquals(7, merged.get(s, b), 0);
+		assertEquals(b, merged.argmax(s));
+	}
+
+	@Test
+	public void testAgentOption() {
+		// no episodes yet: every q-value is 0
+		QLearningAgent agent = new QLearningAgent(new RandomAgent(), 0.1, 0, 0.9);
+		agent.setThreads(2, RANDOM);
+		agent.numEpisodes = 1000;
+		agent.train();
+		// the agent's own table was learned into
+		boolean learned = false;
+		for (int i = 0; i < agent.qTable.values.length && !learned; i++)
+			learned = agent.qTable.values[i] != 0;
+		assertTrue(learned);
+
+		try {
+			agent.setThreads(1, null);
+			assertTrue("no opponent supplier", false);
+		} catch (IllegalArgumentException e) {
+		}
+
+		agent.setActors(2, RANDOM);
+		try {
+			agent.train();
+			assertTrue("actors and threads", false);
+		} catch (IllegalStateException e) {
+		}
+	}
+
+}
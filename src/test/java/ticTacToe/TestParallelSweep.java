@@ -0,0 +1,47 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestParallelSweep {
+
+	static ValueIterationAgent train(int threads, double epsilon, int maxSweeps) {
+		ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -10, -1, 0);
+		agent.setParallelism(threads);
+		agent.setConvergence(epsilon, maxSweeps);
+		agent.train();
+		return agent;
+	}
+
+	@Test
+	public void testConverged() {
+		CompiledMDP model = new TTTMDP(10, -10, -1, 0).compile();
+		RetrogradeSolver.Solution optimal = RetrogradeSolver.solve(model, 0.9);
+		for (int threads : new int[] { 1, 2, 8 }) {
+			ValueIterationAgent agent = train(threads, 1e-9, 100);
+			assertTrue(agent.getResidual() <= 1e-9);
+			for (int s = 0; s < model.numStates(); s++)
+				assertEquals(threads + " threads, state " + s, optimal.values[s], agent.valueFunction[s], 1e-8);
+		}
+	}
+
+	@Test
+	public void testSameForAnyNumberOfThreads() {
+		// two sweeps only, far from converged. Successors have higher ids, so
+		// updating in place reads the same values as a synchronous sweep.
+		ValueIterationAgent one = train(1, 1e-9, 2);
+		for (int threads : new int[] { 2, 8 }) {
+			ValueIterationAgent agent = train(threads, 1e-9, 2);
+			assertEquals(one.sweeps, agent.sweeps);
+			assertEquals(one.getResidual(), agent.getResidual(), 0);
+			assertEquals(one.policyChanges, agent.policyChanges);
+			for (int s = 0; s < one.valueFunction.length; s++) {
+				assertEquals(threads + " threads, state " + s, one.valueFunction[s], agent.valueFunction[s], 0);
+				assertEquals(one.greedy[s], agent.greedy[s]);
+			}
+		}
+	}
+
+}
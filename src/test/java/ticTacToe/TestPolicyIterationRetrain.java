@@ -0,0 +1,51 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestPolicyIterationRetrain {
+
+	/**
+	 * Asserts that the agent's policy is optimal: its exact values are those of
+	 * the {@link RetrogradeSolver}. Ties between moves may be broken differently,
+	 * so the moves themselves aren't compared.
+	 */
+	static void assertOptimal(String engine, PolicyIterationAgent agent) {
+		CompiledMDP model = agent.model;
+		RetrogradeSolver.Solution optimal = RetrogradeSolver.solve(model, agent.discount);
+		double[] values = new double[model.numStates()];
+		RetrogradeSolver.evaluate(model, agent.discount, agent.curPolicy, values);
+		for (int s = 0; s < values.length; s++)
+			assertEquals(engine + ", state " + s, optimal.values[s], values[s], 1e-9);
+	}
+
+	@Test
+	public void testRetrainWithEachEngine() {
+		// the constructor trains once already
+		PolicyIterationAgent agent = new PolicyIterationAgent();
+		assertOptimal("exact evaluation", agent);
+
+		agent.train();
+		assertOptimal("exact evaluation, again", agent);
+
+		agent.setExactEvaluation(false);
+		agent.train();
+		assertOptimal("iterative evaluation", agent);
+
+		agent.setExactEvaluation(true);
+		agent.setModifiedPolicyIteration(3);
+		agent.train();
+		assertOptimal("modified policy iteration", agent);
+
+		agent.setModifiedPolicyIteration(0);
+		agent.setRetrograde(true);
+		agent.train();
+		assertOptimal("retrograde", agent);
+
+		agent.setRetrograde(false);
+		agent.train();
+		assertOptimal("exact evaluation, after retrograde", agent);
+	}
+
+}
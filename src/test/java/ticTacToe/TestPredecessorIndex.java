@@ -0,0 +1,47 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestPredecessorIndex {
+
+	@Test
+	public void testReversesTheTransitions() {
+		CompiledMDP model = new TTTMDP().compile();
+		PredecessorIndex predecessors = new PredecessorIndex(model);
+		int n = model.numStates();
+		assertEquals(n + 1, predecessors.start.length);
+		assertEquals(0, predecessors.start[0]);
+		assertEquals(predecessors.pred.length, predecessors.start[n]);
+
+		// reaches[p][s]: p has a transition to s
+		boolean[][] reaches = new boolean[n][n];
+		for (int p = 0; p < n; p++)
+			for (int a = model.actionStart[p]; a < model.actionStart[p + 1]; a++)
+				for (int t = model.transitionStart[a]; t < model.transitionStart[a + 1]; t++)
+					reaches[p][model.next[t]] = true;
+
+		for (int s = 0; s < n; s++) {
+			int count = 0;
+			for (int p = 0; p < n; p++)
+				if (reaches[p][s])
+					count++;
+			assertEquals(count, predecessors.start[s + 1] - predecessors.start[s]);
+
+			// listed once each, in increasing order
+			for (int i = predecessors.start[s]; i < predecessors.start[s + 1]; i++) {
+				int p = predecessors.pred[i];
+				assertTrue(reaches[p][s]);
+				if (i > predecessors.start[s])
+					assertTrue(predecessors.pred[i - 1] < p);
+			}
+		}
+		// a state has a predecessor once X has moved in it: the empty board and the
+		// boards where only O, moving first, has played have none
+		for (int s = 0; s < n; s++)
+			assertEquals(model.getStates().getGame(s).xMask != 0, predecessors.start[s + 1] > predecessors.start[s]);
+	}
+
+}
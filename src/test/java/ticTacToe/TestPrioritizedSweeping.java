@@ -0,0 +1,67 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestPrioritizedSweeping {
+
+	@Test
+	public void testConvergesToTheOptimalValues() {
+		CompiledMDP model = new TTTMDP().compile();
+		RetrogradeSolver.Solution optimal = RetrogradeSolver.solve(model, 0.9);
+
+		PrioritizedSweeping sweeping = new PrioritizedSweeping(model);
+		double[] values = new double[model.numStates()];
+		byte[] policy = new byte[model.numStates()];
+		Arrays.fill(policy, (byte) -1);
+		int backups = sweeping.run(values, policy, null, 0.9, 1e-9, Integer.MAX_VALUE);
+		assertEquals(backups, sweeping.backups);
+		assertTrue(sweeping.getResidual() <= 1e-9);
+
+		for (int s = 0; s < model.numStates(); s++)
+			assertEquals("state " + s, optimal.values[s], values[s], 1e-8);
+
+		// the recorded moves are greedy for the final values
+		double[] policyValues = new double[model.numStates()];
+		RetrogradeSolver.evaluate(model, 0.9, policy, policyValues);
+		for (int s = 0; s < model.numStates(); s++)
+			assertEquals("state " + s, optimal.values[s], policyValues[s], 1e-8);
+	}
+
+	@Test
+	public void testFewerBackupsThanSweeps() {
+		// value iteration backs up every state that isn't over in every sweep
+		CompiledMDP model = new TTTMDP().compile();
+		int backups = new PrioritizedSweeping(model).run(new double[model.numStates()], 0.9, 1e-9,
+				Integer.MAX_VALUE);
+		// the rewards of the default TTTMDP
+		ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -50, -1, 0);
+		agent.setConvergence(1e-9, 100);
+		agent.train();
+		assertTrue(backups + " backups", backups < agent.getBackups());
+
+		// with rewards only at the end of the game, the states that can't reach one
+		// in a move are only backed up once their successors change: fewer backups
+		// than a single sweep
+		model = new TTTMDP(10, -10, 0, 0).compile();
+		int nonTerminal = 0;
+		for (int s = 0; s < model.numStates(); s++)
+			if (!model.isTerminal(s))
+				nonTerminal++;
+		backups = new PrioritizedSweeping(model).run(new double[model.numStates()], 0.9, 1e-9, Integer.MAX_VALUE);
+		assertTrue(backups + " backups", backups < nonTerminal);
+	}
+
+	@Test
+	public void testBackupBudget() {
+		CompiledMDP model = new TTTMDP().compile();
+		PrioritizedSweeping sweeping = new PrioritizedSweeping(model);
+		assertEquals(10, sweeping.run(new double[model.numStates()], 0.9, 1e-9, 10));
+		assertTrue(sweeping.getResidual() > 1e-9);
+	}
+
+}
@@ -0,0 +1,144 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestQTable {
+
+	/**
+	 * a game that isn't its own representative, and has eight different images,
+	 * so that no two moves of its representative are symmetric
+	 */
+	static Game nonCanonical(StateIndex states) {
+		for (int s = 0; s < states.size(); s++) {
+			Game g = states.getGame(s);
+			if (g.isTerminal())
+				continue;
+			Set<Integer> images = new HashSet<Integer>();
+			for (int t = 0; t < Symmetry.COUNT; t++)
+				images.add(g.transform(t).hashCode());
+			if (images.size() == Symmetry.COUNT)
+				return g.transform(1);
+		}
+		throw new AssertionError();
+	}
+
+	@Test
+	public void testFlatLayout() {
+		QTable table = new QTable();
+		assertEquals(9 * table.getStates().size(), table.values.length);
+		int s = 5;
+		int a = Integer.numberOfTrailingZeros(table.getMoves(s));
+		table.update(s, a, 2.5);
+		assertEquals(2.5, table.values[9 * s + a], 0);
+		assertEquals(2.5, table.get(s, a), 0);
+
+		table.clear();
+		for (double v : table.values)
+			assertEquals(0, v, 0);
+	}
+
+	@Test
+	public void testSymmetricGamesShareQValues() {
+		QTable table = new QTable();
+		Game g = nonCanonical(table.getStates());
+		int cell = Integer.numberOfTrailingZeros(g.getEmptyCells());
+		Move m = Move.of(g.getTurn(), cell);
+		table.addQValue(g, m, 3.0);
+
+		int s = table.indexOf(g);
+		assertEquals(3.0, table.get(s, QTable.actionOf(g, m)), 0);
+		for (int t = 0; t < Symmetry.COUNT; t++) {
+			Game image = g.transform(t);
+			assertEquals(s, table.indexOf(image));
+			assertEquals(3.0, table.getQValue(image, Symmetry.move(t, m)), 0);
+		}
+	}
+
+	/**
+	 * Asserts that the cached greedy move and largest q-value of {@code s} are
+	 * those of a scan of its moves: the largest q-value, the lowest cell on ties.
+	 */
+	static void assertGreedy(QTable table, int s) {
+		int best = -1;
+		for (int moves = table.getMoves(s); moves != 0; moves &= moves - 1) {
+			int a = Integer.numberOfTrailingZeros(moves);
+			if (best < 0 || table.get(s, a) > table.get(s, best))
+				best = a;
+		}
+		assertEquals(best, table.argmax(s));
+		assertEquals((best < 0) ? 0 : table.get(s, best), table.max(s), 0);
+	}
+
+	@Test
+	public void testLoweringTheBestMove() {
+		QTable table = new QTable();
+		int s = 0;
+		int moves = table.getMoves(s);
+		int first = Integer.numberOfTrailingZeros(moves);
+		int second = Integer.numberOfTrailingZeros(moves & ~(1 << first));
+		int third = Integer.numberOfTrailingZeros(moves & ~(1 << first) & ~(1 << second));
+
+		table.update(s, second, 5);
+		table.update(s, third, 3);
+		assertEquals(second, table.argmax(s));
+		assertEquals(5, table.max(s), 0);
+
+		// the best move goes down, but stays the best
+		table.update(s, second, 4);
+		assertGreedy(table, s);
+		// it goes below the third
+		table.update(s, second, 1);
+		assertEquals(third, table.argmax(s));
+		assertEquals(3, table.max(s), 0);
+		// and below 0: the untouched moves are now as good, the lowest cell wins
+		table.update(s, third, -1);
+		table.update(s, second, -2);
+		assertEquals(first, table.argmax(s));
+		assertEquals(0, table.max(s), 0);
+	}
+
+	@Test
+	public void testGreedyAfterRandomUpdates() {
+		QTable table = new QTable();
+		Random random = new Random(3);
+		int n = table.getStates().size();
+		for (int i = 0; i < 100000; i++) {
+			int s = random.nextInt(n);
+			int moves = table.getMoves(s);
+			if (moves == 0)
+				continue;
+			// a random legal cell, and a value that is often below the current one
+			int a;
+			do
+				a = random.nextInt(9);
+			while ((moves & (1 << a)) == 0);
+			table.update(s, a, table.get(s, a) + random.nextInt(5) - 3);
+			assertGreedy(table, s);
+		}
+		for (int s = 0; s < n; s++)
+			assertGreedy(table, s);
+	}
+
+	@Test
+	public void testIllegalMoves() {
+		QTable table = new QTable();
+		Game g = new Game();
+		g.push(4);
+		g.push(0);
+		assertNull(table.getQValue(g, Move.of('X', 4)));
+		try {
+			table.addQValue(g, Move.of('X', 0), 1.0);
+			assertTrue("the cell is taken", false);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestReplan {
+
+	static final MDPConfig CONFIG = new MDPConfig(0.9, 10, -9, 0, 0);
+
+	/**
+	 * Asserts that {@code values} are the optimal values of {@code model}.
+	 */
+	static void assertOptimal(CompiledMDP model, double discount, double[] values, double delta) {
+		RetrogradeSolver.Solution optimal = RetrogradeSolver.solve(model, discount);
+		for (int s = 0; s < values.length; s++)
+			assertEquals("state " + s, optimal.values[s], values[s], delta);
+	}
+
+	@Test
+	public void testFirstBestMoveIsNotAChange() {
+		// the first sweep from 0 only finds the best moves, it doesn't change them
+		for (int threads = 1; threads <= 2; threads++) {
+			ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -10, -1, 0);
+			agent.setParallelism(threads);
+			agent.setConvergence(1e-6, 1);
+			agent.train();
+			assertEquals(0, agent.policyChanges);
+		}
+
+		ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -10, -1, 0);
+		agent.setRetrograde(true);
+		agent.train();
+		assertEquals(0, agent.policyChanges);
+	}
+
+	@Test
+	public void testValueIterationReplan() {
+		ValueIterationAgent agent = new ValueIterationAgent();
+		ReplanReport report = agent.replan(CONFIG);
+		assertOptimal(agent.model, CONFIG.discount, agent.valueFunction, 1e-5);
+		assertEquals(agent.sweeps, report.warmSweeps);
+		assertEquals(agent.policyChanges, report.warmPolicyChanges);
+
+		// value iteration is deterministic: the cold side is a solve from scratch
+		ValueIterationAgent cold = new ValueIterationAgent(CONFIG.discount, CONFIG.winReward, CONFIG.loseReward,
+				CONFIG.livingReward, CONFIG.drawReward);
+		cold.train();
+		assertEquals(cold.sweeps, report.coldSweeps);
+		assertEquals(cold.policyChanges, report.coldPolicyChanges);
+		assertEquals(report.coldSweeps - report.warmSweeps, report.getSweepsSaved());
+		assertEquals(report.coldPolicyChanges - report.warmPolicyChanges, report.getPolicyChangesSaved());
+		// starting from the old policy, fewer best moves change
+		assertTrue(report.getPolicyChangesSaved() > 0);
+	}
+
+	@Test
+	public void testPolicyIterationReplan() {
+		PolicyIterationAgent agent = new PolicyIterationAgent();
+		ReplanReport report = agent.replan(CONFIG);
+		double[] values = new double[agent.model.numStates()];
+		RetrogradeSolver.evaluate(agent.model, CONFIG.discount, agent.curPolicy, values);
+		assertOptimal(agent.model, CONFIG.discount, values, 1e-9);
+		assertEquals(agent.rounds, report.warmSweeps);
+		assertEquals(agent.policyChanges, report.warmPolicyChanges);
+		// the old policy is nearly optimal already; a random one is not
+		assertTrue(report.getPolicyChangesSaved() > 0);
+	}
+
+	@Test
+	public void testRetrogradeReplan() {
+		ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -10, -1, 0);
+		agent.setRetrograde(true);
+		agent.train();
+		ReplanReport report = agent.replan(CONFIG);
+		assertOptimal(agent.model, CONFIG.discount, agent.valueFunction, 0);
+		assertEquals(1, report.coldSweeps);
+		assertEquals(1, report.warmSweeps);
+		assertEquals(0, report.coldPolicyChanges);
+	}
+
+}
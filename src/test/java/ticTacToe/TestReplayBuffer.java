@@ -0,0 +1,85 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestReplayBuffer {
+
+	@Test
+	public void testWrapAround() {
+		ReplayBuffer buffer = new ReplayBuffer(5);
+		for (int i = 0; i < 7; i++)
+			assertEquals(i % 5, buffer.add(100 + i, i, -i, 200 + i));
+		assertEquals(5, buffer.size());
+
+		// the first two transitions were replaced by the last two
+		int[] expected = { 105, 106, 102, 103, 104 };
+		for (int slot = 0; slot < 5; slot++) {
+			int i = expected[slot] - 100;
+			assertEquals(100 + i, buffer.state(slot));
+			assertEquals(i, buffer.cell(slot));
+			assertEquals(-i, buffer.reward(slot), 0);
+			assertEquals(200 + i, buffer.next(slot));
+		}
+	}
+
+	@Test
+	public void testSampleSkipsEmptyAndZeroPrioritySlots() {
+		// 6 slots in a tree with 8 leaves: the last two leaves are never filled
+		ReplayBuffer buffer = new ReplayBuffer(6);
+		for (int i = 0; i < 4; i++)
+			buffer.add(i, 0, 0, 0);
+		buffer.setPriority(1, 0);
+		buffer.setPriority(3, 5);
+
+		Random random = new Random(1);
+		int[] counts = new int[6];
+		for (int i = 0; i < 100000; i++) {
+			int slot = buffer.samplePrioritized(random);
+			assertTrue("sampled slot " + slot, slot < buffer.size());
+			assertTrue("sampled slot " + slot, buffer.priority(slot) > 0);
+			counts[slot]++;
+		}
+		// slot 3 has the largest priority
+		assertTrue(counts[3] > counts[0] && counts[3] > counts[2]);
+	}
+
+	@Test
+	public void testTreeSumsTheLeaves() {
+		ReplayBuffer buffer = new ReplayBuffer(100);
+		Random random = new Random(2);
+		for (int i = 0; i < 1000; i++) {
+			int slot = buffer.add(i % 900, i % 9, 0, 0);
+			buffer.setPriority(random.nextInt(buffer.size()), random.nextGaussian() * 10);
+			buffer.setPriority(slot, random.nextDouble());
+
+			double sum = 0;
+			for (int s = 0; s < buffer.capacity; s++)
+				sum += buffer.priority(s);
+			assertEquals(sum, buffer.totalPriority(), 1e-9 * sum);
+		}
+	}
+
+	@Test
+	public void testWeights() {
+		ReplayBuffer buffer = new ReplayBuffer(4);
+		for (int i = 0; i < 3; i++)
+			buffer.add(i, 0, 0, 0);
+		buffer.setPriority(0, 1);
+		buffer.setPriority(1, 10);
+
+		// the smallest priority has the largest weight, 1
+		double smallest = buffer.priority(2);
+		for (int slot = 0; slot < 3; slot++) {
+			assertEquals(Math.pow(smallest / buffer.priority(slot), 0.5), buffer.weight(slot, 0.5), 1e-12);
+			assertTrue(buffer.weight(slot, 1) <= 1);
+		}
+		assertEquals(1, buffer.weight(2, 1), 0);
+		assertEquals(1, buffer.weight(1, 0), 0);
+	}
+
+}
@@ -0,0 +1,54 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestRetrogradeSolver {
+
+	@Test
+	public void testAgreesWithValueIteration() {
+		ValueIterationAgent agent = new ValueIterationAgent();
+		CompiledMDP model = new TTTMDP().compile();
+		RetrogradeSolver.Solution solution = RetrogradeSolver.solve(model, 0.9);
+
+		for (int s = 0; s < model.numStates(); s++) {
+			assertEquals(agent.valueFunction[s], solution.values[s], 1e-6);
+			if (model.isTerminal(s))
+				assertEquals(-1, solution.policy[s]);
+			else
+				assertTrue(model.actionOf(s, solution.policy[s]) >= 0);
+		}
+	}
+
+	@Test
+	public void testPolicyIsOptimal() {
+		CompiledMDP model = new TTTMDP().compile();
+		double[] q = new double[model.numActions()];
+		RetrogradeSolver.Solution solution = RetrogradeSolver.solve(model, 0.9, q);
+
+		for (int s = 0; s < model.numStates(); s++)
+			for (int a = model.actionStart[s]; a < model.actionStart[s + 1]; a++) {
+				assertEquals(model.qValue(a, solution.values, 0.9), q[a], 1e-12);
+				assertTrue(q[a] <= solution.values[s]);
+			}
+
+		// back-substituting the optimal policy gives the optimal values back
+		double[] values = new double[model.numStates()];
+		RetrogradeSolver.evaluate(model, 0.9, solution.policy, values);
+		for (int s = 0; s < model.numStates(); s++)
+			assertEquals(solution.values[s], values[s], 1e-12);
+	}
+
+	@Test
+	public void testNeedsPlyOrder() {
+		CompiledMDP model = new TTTMDP().compile(new StateIndex('X', false, true));
+		try {
+			RetrogradeSolver.solve(model, 0.9);
+			assertTrue("the states are not ordered by ply", false);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+}
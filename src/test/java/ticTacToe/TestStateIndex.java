@@ -0,0 +1,68 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestStateIndex {
+
+	@Test
+	public void testCanonicalSize() {
+		StateIndex states = StateIndex.of('X', true);
+		assertEquals(903, states.size());
+		assertTrue(states.isCanonical());
+		assertSame(states, StateIndex.of('X', true));
+	}
+
+	@Test
+	public void testFullIndex() {
+		List<Game> games = Game.generateAllValidGames('X');
+		StateIndex states = StateIndex.of('X', false);
+		assertEquals(games.size(), states.size());
+		for (int id = 0; id < states.size(); id++)
+			assertEquals(id, states.indexOf(states.getGame(id)));
+		for (Game g : games)
+			assertEquals(g, states.getGame(states.indexOf(g)));
+	}
+
+	@Test
+	public void testEveryGameMapsToItsRepresentative() {
+		StateIndex states = StateIndex.of('X', true);
+		for (int id = 0; id < states.size(); id++) {
+			assertEquals(id, states.indexOf(states.getGame(id)));
+			assertEquals(Symmetry.IDENTITY, states.getGame(id).canonicalTransform());
+		}
+		for (Game g : Game.generateAllValidGames('X'))
+			assertEquals(states.getGame(states.indexOf(g)), g.canonical());
+	}
+
+	@Test
+	public void testOrderedByPly() {
+		StateIndex states = StateIndex.of('X', true);
+		assertTrue(states.isOrderedByPly());
+		assertEquals(0, states.plyStart(0));
+		assertEquals(states.size(), states.plyEnd(9));
+		for (int ply = 0; ply <= 9; ply++)
+			for (int id = states.plyStart(ply); id < states.plyEnd(ply); id++)
+				assertEquals(ply, states.getGame(id).moveCount);
+	}
+
+	@Test
+	public void testUnknownGames() {
+		StateIndex states = StateIndex.of('X', true);
+		// O's turn, and not over
+		Game g = new Game('O');
+		assertEquals(-1, states.indexOf(g));
+
+		try {
+			new StateIndex('X', false, true).plyStart(0);
+			assertTrue("not ordered by ply", false);
+		} catch (IllegalStateException e) {
+		}
+	}
+
+}
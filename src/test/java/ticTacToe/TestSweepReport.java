@@ -0,0 +1,72 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestSweepReport {
+
+	static List<SweepReport> train(ValueIterationAgent agent) {
+		final List<SweepReport> reports = new ArrayList<SweepReport>();
+		agent.addTrainingListener(new TrainingListener() {
+			public void sweepDone(SweepReport report) {
+				reports.add(report);
+			}
+		});
+		agent.train();
+		return reports;
+	}
+
+	@Test
+	public void testOneReportPerSweep() {
+		ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -10, -1, 0);
+		agent.setConvergence(1e-6, 100);
+		List<SweepReport> reports = train(agent);
+
+		assertEquals(agent.sweeps, reports.size());
+		long elapsed = 0;
+		for (int i = 0; i < reports.size(); i++) {
+			SweepReport report = reports.get(i);
+			assertEquals(i + 1, report.sweep);
+			assertTrue(report.statesUpdated <= agent.states.size());
+			assertTrue(report.sweepNanos <= report.elapsedNanos);
+			assertTrue(report.elapsedNanos >= elapsed);
+			elapsed = report.elapsedNanos;
+			// training only stops on the last sweep
+			if (i < reports.size() - 1)
+				assertTrue(report.residual > 1e-6);
+		}
+		SweepReport last = reports.get(reports.size() - 1);
+		assertTrue(last.residual <= 1e-6);
+		assertEquals(agent.getResidual(), last.residual, 0);
+		// nothing changed in the last sweep
+		assertEquals(0, last.statesUpdated);
+	}
+
+	@Test
+	public void testSweepCap() {
+		ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -10, -1, 0);
+		agent.setConvergence(1e-6, 2);
+		List<SweepReport> reports = train(agent);
+		assertEquals(2, agent.sweeps);
+		assertEquals(2, reports.size());
+		assertTrue(reports.get(1).residual > 1e-6);
+		// the first sweep starts from 0, so it changes values
+		assertTrue(reports.get(0).statesUpdated > 0);
+	}
+
+	@Test
+	public void testPrioritizedIsOneReport() {
+		ValueIterationAgent agent = new ValueIterationAgent(0.9, 10, -10, -1, 0);
+		agent.setPrioritized(true);
+		List<SweepReport> reports = train(agent);
+		assertEquals(1, reports.size());
+		assertEquals(1, reports.get(0).sweep);
+		assertEquals(agent.getResidual(), reports.get(0).residual, 0);
+	}
+
+}
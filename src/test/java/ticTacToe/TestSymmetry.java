@@ -0,0 +1,70 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestSymmetry {
+
+	@Test
+	public void testCellsArePermutations() {
+		for (int t = 0; t < Symmetry.COUNT; t++) {
+			int seen = 0;
+			for (int c = 0; c < 9; c++)
+				seen |= 1 << Symmetry.cell(t, c);
+			assertEquals(0x1FF, seen);
+		}
+		for (int c = 0; c < 9; c++)
+			assertEquals(c, Symmetry.cell(Symmetry.IDENTITY, c));
+		// the centre never moves
+		for (int t = 0; t < Symmetry.COUNT; t++)
+			assertEquals(4, Symmetry.cell(t, 4));
+	}
+
+	@Test
+	public void testInverse() {
+		for (int t = 0; t < Symmetry.COUNT; t++) {
+			int u = Symmetry.inverse(t);
+			for (int c = 0; c < 9; c++)
+				assertEquals(c, Symmetry.cell(u, Symmetry.cell(t, c)));
+			for (int m = 0; m < 512; m++)
+				assertEquals(m, Symmetry.mask(u, Symmetry.mask(t, m)));
+		}
+	}
+
+	@Test
+	public void testSelfInverse() {
+		// the identity, the half turn and the four reflections undo themselves; the
+		// quarter turns undo each other
+		int[] selfInverse = { 0, 2, 4, 5, 6, 7 };
+		for (int t : selfInverse)
+			assertEquals(t, Symmetry.inverse(t));
+		assertEquals(3, Symmetry.inverse(1));
+		assertEquals(1, Symmetry.inverse(3));
+	}
+
+	@Test
+	public void testMasksFollowCells() {
+		for (int t = 0; t < Symmetry.COUNT; t++)
+			for (int c = 0; c < 9; c++)
+				assertEquals(1 << Symmetry.cell(t, c), Symmetry.mask(t, 1 << c));
+	}
+
+	@Test
+	public void testOrbitsShareTheirRepresentative() {
+		for (Game g : Game.generateAllValidGames('X')) {
+			Game canonical = g.canonical();
+			assertEquals(canonical, g.transform(g.canonicalTransform()));
+			for (int t = 0; t < Symmetry.COUNT; t++) {
+				Game image = g.transform(t);
+				assertEquals(g, image.transform(Symmetry.inverse(t)));
+				assertEquals(canonical, image.canonical());
+			}
+			for (int c = 0; c < 9; c++)
+				assertEquals(c, g.fromCanonical(Symmetry.cell(g.canonicalTransform(), c)));
+			assertTrue(canonical.hashCode() <= g.hashCode());
+		}
+	}
+
+}
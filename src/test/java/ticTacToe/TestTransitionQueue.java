@@ -0,0 +1,99 @@
+package ticTacToe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestTransitionQueue {
+
+	@Test
+	public void testPackAtTheLargestIds() {
+		int max = (1 << 27) - 1;
+		for (int cell = 0; cell < 9; cell++) {
+			long t = TransitionQueue.pack(max, cell, max);
+			assertEquals(max, TransitionQueue.state(t));
+			assertEquals(cell, TransitionQueue.cell(t));
+			assertEquals(max, TransitionQueue.next(t));
+
+			t = TransitionQueue.pack(max, cell, 0);
+			assertEquals(max, TransitionQueue.state(t));
+			assertEquals(0, TransitionQueue.next(t));
+
+			t = TransitionQueue.pack(0, cell, max);
+			assertEquals(0, TransitionQueue.state(t));
+			assertEquals(max, TransitionQueue.next(t));
+		}
+	}
+
+	@Test
+	public void testBounded() {
+		TransitionQueue queue = new TransitionQueue(3);
+		assertEquals(4, queue.capacity);
+		for (int i = 0; i < 4; i++)
+			assertTrue(queue.offer(i, i));
+		assertFalse(queue.offer(4, 4));
+
+		long[] transitions = new long[8];
+		double[] rewards = new double[8];
+		assertEquals(2, queue.drain(transitions, rewards, 2));
+		assertEquals(0, transitions[0]);
+		assertEquals(1, transitions[1]);
+		assertTrue(queue.offer(4, 4));
+		assertEquals(3, queue.drain(transitions, rewards, 8));
+		assertEquals(4, transitions[2]);
+		assertEquals(4, rewards[2], 0);
+		assertEquals(0, queue.drain(transitions, rewards, 8));
+	}
+
+	/**
+	 * Several producers fill a small queue while one consumer drains it: every
+	 * transition must come out exactly once, in order for each producer.
+	 */
+	@Test
+	public void testManyProducers() throws InterruptedException {
+		final int producers = 4;
+		final int perProducer = 100000;
+		final TransitionQueue queue = new TransitionQueue(64);
+
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads[p] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perProducer; i++)
+						while (!queue.offer(TransitionQueue.pack(producer, i % 9, i), producer))
+							Thread.yield();
+				}
+			});
+			threads[p].start();
+		}
+
+		int[] next = new int[producers];
+		long[] transitions = new long[32];
+		double[] rewards = new double[32];
+		int received = 0;
+		while (received < producers * perProducer) {
+			int n = queue.drain(transitions, rewards, transitions.length);
+			if (n == 0)
+				Thread.yield();
+			for (int i = 0; i < n; i++) {
+				int producer = TransitionQueue.state(transitions[i]);
+				int index = TransitionQueue.next(transitions[i]);
+				assertEquals(next[producer], index); // none lost, duplicated or reordered
+				assertEquals(index % 9, TransitionQueue.cell(transitions[i]));
+				assertEquals(producer, rewards[i], 0);
+				next[producer]++;
+			}
+			received += n;
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(0, queue.drain(transitions, rewards, transitions.length));
+		for (int p = 0; p < producers; p++)
+			assertEquals(perProducer, next[p]);
+	}
+
+}